@@ -1,35 +1,66 @@
 package tree.me.api;
 
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tree.me.core.api.ANode;
+import tree.me.core.api.ANodePage;
 import tree.me.core.api.AValueHolder;
 import tree.me.core.api.AValueHolder.AValueHolderBuilder;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Node;
 import tree.me.core.index.Path;
 import tree.me.service.TreeMeIndex;
+import tree.me.service.async.TreeMeExecutors;
+import tree.me.service.reactive.StreamPublisher;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.stream.Collectors.toList;
 import static tree.me.core.api.AValueHolder.AValueType.GROUP;
 import static tree.me.core.api.AValueHolder.AValueType.RESOURCE;
 import static tree.me.core.index.Path.ROOT;
+import static tree.me.core.index.Path.parentOf;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCopy;
 
-public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
+public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T>, AsyncTreeMeApi<T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractTreeMeApi.class);
 
     private TreeMeIndex treeMeIndex;
+    private Executor executor;
 
     public AbstractTreeMeApi(TreeMeIndex treeMeIndex) {
+        this(treeMeIndex, TreeMeExecutors.sharedBlockingExecutor());
+    }
+
+    /**
+     * Run the blocking index calls and callbacks behind {@link AsyncTreeMeApi} on the executor, rather
+     * than on one starting a virtual thread per task, see {@link TreeMeExecutors#newBlockingExecutor()}.
+     *
+     * @param treeMeIndex
+     * @param executor
+     */
+    public AbstractTreeMeApi(TreeMeIndex treeMeIndex, Executor executor) {
+        requireNonNull(executor);
         this.treeMeIndex = treeMeIndex;
+        this.executor = executor;
         init();
     }
 
@@ -42,6 +73,28 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
      */
     protected abstract T onGetResource(String id);
 
+    /**
+     * Callback executed on invocation of {@link #getGroupResources(Path)} through the {@link TreeMeApi}
+     * with the IDs of every resource directly under the group, so they can be fetched at once. Return
+     * each {@link T} resource found by its ID. Calls {@link #onGetResource(String)} per ID by default.
+     *
+     * @param ids
+     * @return
+     */
+    protected Map<String, T> onGetResources(Collection<String> ids) {
+        Map<String, T> resources = newHashMap();
+
+        for (String id : ids) {
+            T resource = onGetResource(id);
+
+            if (resource != null) {
+                resources.put(id, resource);
+            }
+        }
+
+        return resources;
+    }
+
     /**
      * Callback executed on invocation of {@link #saveResource(Path, String, String, Object)}
      * through the {@link TreeMeApi}. This is your underlying save implementation for
@@ -63,8 +116,9 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
 
     /**
      * Callback executed on invocation of {@link #delete(Path)} through the
-     * {@link TreeMeApi} for a non-group {@link Path}. This is your underlying
-     * delete implementation for your {@link T} resource.
+     * {@link TreeMeApi} for a non-group {@link Path}, before its removal from the tree
+     * is committed. If it throws, the tree is left unchanged.
+     * This is your underlying delete implementation for your {@link T} resource.
      *
      * @param id
      */
@@ -72,13 +126,119 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
 
     /**
      * Callback executed on invocation of {@link #delete(Path)} through the
-     * {@link TreeMeApi} for a group {@link Path}. You are provided all the IDs
-     * that were underneath the given {@link Path}.
+     * {@link TreeMeApi} for a group {@link Path}, before its removal from the tree
+     * is committed. If it throws, the tree is left unchanged.
+     * You are provided all the IDs that were underneath the given {@link Path}.
      *
      * @param resourceIdsToDelete
      */
     protected abstract void onGroupDelete(Iterable<String> resourceIdsToDelete);
 
+    /**
+     * Callback executed on invocation of {@link #copy(Path, Path)} through the {@link TreeMeApi},
+     * once the copy has been checked but before the tree is copied. You are provided all the IDs
+     * underneath the copied {@link Path} and may duplicate those resources, returning the ID of each
+     * duplicate by the ID it was duplicated from. Copies of resources left out keep the original ID.
+     * Should the tree still fail to copy, the duplicates are handed to {@link #onGroupDelete(Iterable)}.
+     * Nothing is duplicated by default.
+     *
+     * @param resourceIds
+     * @return
+     */
+    protected Map<String, String> onCopyResources(Iterable<String> resourceIds) {
+        return newHashMap();
+    }
+
+    /**
+     * Asynchronous {@link #onGetResource(String)}, executed on invocation of {@link #getAsync(Path)} and
+     * {@link #getResourceAsync(Path)}. Runs the blocking callback on the executor by default; override it
+     * when your {@link T} resources can be fetched without blocking.
+     *
+     * @param id
+     * @return
+     */
+    protected CompletableFuture<T> onGetResourceAsync(String id) {
+        return supplyAsync(() -> onGetResource(id), executor);
+    }
+
+    /**
+     * Asynchronous {@link #onGetResources(Collection)}, executed on invocation of
+     * {@link #getGroupResourcesAsync(Path)}. Runs the blocking callback on the executor by default.
+     *
+     * @param ids
+     * @return
+     */
+    protected CompletableFuture<Map<String, T>> onGetResourcesAsync(Collection<String> ids) {
+        return supplyAsync(() -> onGetResources(ids), executor);
+    }
+
+    /**
+     * Asynchronous {@link #onSaveResource(Object)}, executed on invocation of
+     * {@link #saveResourceAsync(Path, String, String, Object)}. Runs the blocking callback on the executor by default.
+     *
+     * @param resource
+     * @return
+     */
+    protected CompletableFuture<Void> onSaveResourceAsync(T resource) {
+        return runAsync(() -> onSaveResource(resource), executor);
+    }
+
+    /**
+     * Asynchronous {@link #onSaveGroup(Path, String)}, executed on invocation of
+     * {@link #saveGroupAsync(Path, String)}. Runs the blocking callback on the executor by default.
+     *
+     * @param path
+     * @param name
+     * @return
+     */
+    protected CompletableFuture<Void> onSaveGroupAsync(Path path, String name) {
+        return runAsync(() -> onSaveGroup(path, name), executor);
+    }
+
+    /**
+     * Asynchronous {@link #onResourceDelete(String)}, executed on invocation of {@link #deleteAsync(Path)}
+     * for a non-group {@link Path}. The delete only commits once the returned future completed normally.
+     * Runs the blocking callback on the executor by default.
+     *
+     * @param id
+     * @return
+     */
+    protected CompletableFuture<Void> onResourceDeleteAsync(String id) {
+        return runAsync(() -> onResourceDelete(id), executor);
+    }
+
+    /**
+     * Asynchronous {@link #onGroupDelete(Iterable)}, executed on invocation of {@link #deleteAsync(Path)}
+     * for a group {@link Path}. The delete only commits once the returned future completed normally.
+     * Runs the blocking callback on the executor by default.
+     *
+     * @param resourceIdsToDelete
+     * @return
+     */
+    protected CompletableFuture<Void> onGroupDeleteAsync(Iterable<String> resourceIdsToDelete) {
+        return runAsync(() -> onGroupDelete(resourceIdsToDelete), executor);
+    }
+
+    /**
+     * Asynchronous {@link #onCopyResources(Iterable)}, executed on invocation of {@link #copyAsync(Path, Path)}.
+     * Runs the blocking callback on the executor by default.
+     *
+     * @param resourceIds
+     * @return
+     */
+    protected CompletableFuture<Map<String, String>> onCopyResourcesAsync(Iterable<String> resourceIds) {
+        return supplyAsync(() -> onCopyResources(resourceIds), executor);
+    }
+
+    /**
+     * Executor the blocking index calls and callbacks behind {@link AsyncTreeMeApi} run on.
+     *
+     * @return
+     */
+    protected Executor getExecutor() {
+        return executor;
+    }
+
     /**
      * Unique string representation of your type associated to your {@link TreeMeApi}.
      *
@@ -97,28 +257,27 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
 
     @Override
     public Iterable<ANode> getTree() {
-        Optional<Iterable<Node>> optNodes = treeMeIndex.getAllByPath(new Path(), getType());
+        Optional<Stream<Node>> optNodes = treeMeIndex.streamAllByPath(new Path(), getType());
 
         if (!optNodes.isPresent()) {
             return newArrayList();
         }
 
-        List<Node> nodes = newArrayList(optNodes.get());
-
         // build tree
         Map<String, ANode> nodeMap = newHashMap();
 
         nodeMap.put(ROOT, new ANode(ROOT, getType(), "", false, "", newArrayList()));
-        nodes.forEach(node -> nodeMap.put(node.getPath(), toANode(node)));
 
-        for (ANode node : nodeMap.values()) {
-            Path path = Path.from(node.getPath());
+        try (Stream<Node> nodes = optNodes.get()) {
+            nodes.forEach(node -> nodeMap.put(node.getPath(), toANode(node)));
+        }
 
-            if (path.isRoot()) {
+        for (ANode node : nodeMap.values()) {
+            if (node.getPath().equals(ROOT)) {
                 continue;
             }
 
-            nodeMap.get(path.getParentPath()).addChild(node);
+            nodeMap.get(parentOf(node.getPath())).addChild(node);
         }
 
         return nodeMap.get(ROOT).getChildren();
@@ -159,6 +318,14 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
         return ofNullable(onGetResource(optNode.get().getValue()));
     }
 
+    @Override
+    public Map<ImmutablePath, ANode> getNodes(Collection<Path> paths) {
+        Map<ImmutablePath, ANode> nodes = newLinkedHashMap();
+        treeMeIndex.getByPaths(paths, getType()).forEach((path, node) -> nodes.put(path, toANode(node)));
+
+        return nodes;
+    }
+
     @Override
     public Optional<Iterable<ANode>> getGroup(Path path) {
         Optional<Iterable<Node>> children = treeMeIndex.getChildrenByPath(path, getType());
@@ -173,17 +340,36 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
     }
 
     @Override
-    public void saveResource(Path path, String name, String resourceId, T resource) {
-        Optional<Node> optNode = treeMeIndex.getByPath(path, getType());
+    public Optional<ANodePage> getGroup(Path path, int pageSize, String token) {
+        return treeMeIndex.getChildrenByPath(path, getType(), pageSize, token)
+                .map(page -> new ANodePage(page.getNodes().stream()
+                        .map(child -> toANode(child))
+                        .collect(toList()), page.getNextToken()));
+    }
 
-        if (optNode.isPresent()) {
-            if (optNode.get().getLeaf()) {
-                throw new RuntimeException("Path you are trying to save the resource to is a group. Path: " + path.getPath());
-            }
-        } else {
-            treeMeIndex.save(new Node(path.getPath(), getType(), name, true, resourceId));
+    @Override
+    public Optional<Map<ImmutablePath, T>> getGroupResources(Path path) {
+        return treeMeIndex.getChildrenByPath(path, getType())
+                .map(children -> {
+                    List<Node> leaves = getLeaves(children);
+                    return byPath(leaves, onGetResources(getValues(leaves)));
+                });
+    }
+
+    @Override
+    public Optional<Publisher<ANode>> publishAll(Path path) {
+        if (!treeMeIndex.exists(path, getType())) {
+            return Optional.empty();
         }
 
+        return Optional.of(new StreamPublisher<>(() -> treeMeIndex.streamAllByPath(path, getType())
+                .map(nodes -> nodes.map(AbstractTreeMeApi::toANode))
+                .orElseGet(Stream::empty), executor));
+    }
+
+    @Override
+    public void saveResource(Path path, String name, String resourceId, T resource) {
+        indexResource(path, name, resourceId);
         onSaveResource(resource);
     }
 
@@ -193,21 +379,274 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
         onSaveGroup(path, name);
     }
 
+    @Override
+    public void move(Path from, Path to) {
+        treeMeIndex.move(from, to, getType());
+    }
+
+    @Override
+    public void copy(Path from, Path to) {
+        copyInIndex(from, to, onCopyResources(getCopiedResourceIds(from, to)));
+    }
+
     @Override
     public void delete(Path path) {
-        Node node = treeMeIndex.getByPath(path, getType()).orElseThrow(invalidPath);
+        deleteFromIndex(path, deleted -> {
+            if (deleted.node.getLeaf()) {
+                onResourceDelete(deleted.node.getValue());
+            } else {
+                onGroupDelete(deleted.resourceIds);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Iterable<ANode>> getTreeAsync() {
+        return supplyAsync(this::getTree, executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<AValueHolder>> getAsync(Path path) {
+        Path lookup = Path.from(path);
+
+        return supplyAsync(() -> treeMeIndex.getByPath(lookup, getType()), executor)
+                .thenCompose(optNode -> {
+                    if (!optNode.isPresent()) {
+                        return completedFuture(Optional.<AValueHolder>empty());
+                    }
+
+                    Node node = optNode.get();
+
+                    if (!node.getLeaf()) {
+                        LOG.debug("Requested path was a group.");
+                        return getGroupAsync(lookup)
+                                .thenApply(group -> ofNullable(AValueHolder.builder().type(GROUP).value(group.get()).build()));
+                    }
+
+                    LOG.debug("Requested path was a resource.");
+                    return onGetResourceAsync(node.getValue())
+                            .thenApply(resource -> ofNullable(AValueHolder.builder().type(RESOURCE).value(resource).build()));
+                });
+    }
+
+    @Override
+    public CompletableFuture<Optional<T>> getResourceAsync(Path path) {
+        Path lookup = Path.from(path);
+
+        return supplyAsync(() -> treeMeIndex.getByPath(lookup, getType()), executor)
+                .thenCompose(optNode -> optNode.isPresent() ?
+                        onGetResourceAsync(optNode.get().getValue()).thenApply(resource -> ofNullable(resource)) :
+                        completedFuture(Optional.<T>empty()));
+    }
+
+    @Override
+    public CompletableFuture<Map<ImmutablePath, ANode>> getNodesAsync(Collection<Path> paths) {
+        List<Path> lookups = paths.stream().map(Path::from).collect(toList());
+        return supplyAsync(() -> getNodes(lookups), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Iterable<ANode>>> getGroupAsync(Path path) {
+        Path lookup = Path.from(path);
+        return supplyAsync(() -> getGroup(lookup), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<ANodePage>> getGroupAsync(Path path, int pageSize, String token) {
+        Path lookup = Path.from(path);
+        return supplyAsync(() -> getGroup(lookup, pageSize, token), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Map<ImmutablePath, T>>> getGroupResourcesAsync(Path path) {
+        Path lookup = Path.from(path);
+
+        return supplyAsync(() -> treeMeIndex.getChildrenByPath(lookup, getType()).map(AbstractTreeMeApi::getLeaves), executor)
+                .thenCompose(leaves -> leaves.isPresent() ?
+                        onGetResourcesAsync(getValues(leaves.get()))
+                                .thenApply(resources -> ofNullable(byPath(leaves.get(), resources))) :
+                        completedFuture(Optional.<Map<ImmutablePath, T>>empty()));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Publisher<ANode>>> publishAllAsync(Path path) {
+        Path lookup = Path.from(path);
+        return supplyAsync(() -> publishAll(lookup), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveResourceAsync(Path path, String name, String resourceId, T resource) {
+        Path target = Path.from(path);
+
+        return runAsync(() -> indexResource(target, name, resourceId), executor)
+                .thenCompose(ignored -> onSaveResourceAsync(resource));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveGroupAsync(Path path, String name) {
+        Path target = Path.from(path);
+
+        return runAsync(() -> treeMeIndex.save(new Node(target.getPath(), getType(), name, false, "")), executor)
+                .thenCompose(ignored -> onSaveGroupAsync(target, name));
+    }
+
+    @Override
+    public CompletableFuture<Void> moveAsync(Path from, Path to) {
+        Path source = Path.from(from);
+        Path target = Path.from(to);
+
+        return runAsync(() -> move(source, target), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> copyAsync(Path from, Path to) {
+        Path source = Path.from(from);
+        Path target = Path.from(to);
+
+        return supplyAsync(() -> getCopiedResourceIds(source, target), executor)
+                .thenCompose(this::onCopyResourcesAsync)
+                .thenAcceptAsync(values -> copyInIndex(source, target, values), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Path path) {
+        Path target = Path.from(path);
+
+        // the delete has to stay pending until the callback is done, so its thread waits for it
+        return runAsync(() -> deleteFromIndex(target, deleted -> (deleted.node.getLeaf() ?
+                onResourceDeleteAsync(deleted.node.getValue()) :
+                onGroupDeleteAsync(deleted.resourceIds)).join()), executor);
+    }
 
-        if (node.getLeaf()) {
-            onResourceDelete(node.getValue());
+    private void indexResource(Path path, String name, String resourceId) {
+        Optional<Node> optNode = treeMeIndex.getByPath(path, getType());
+
+        if (optNode.isPresent()) {
+            if (optNode.get().getLeaf()) {
+                throw new RuntimeException("Path you are trying to save the resource to is a group. Path: " + path.getPath());
+            }
         } else {
-            // We already have path existence checks done above, so we know there will be a value
-            // for the call to getAllByPath
-            onGroupDelete(newArrayList(treeMeIndex.getAllByPath(path, getType()).get()).stream()
-                    .filter(n -> !n.getLeaf())
-                    .map(n -> n.getValue())
-                    .collect(toList()));
+            treeMeIndex.save(new Node(path.getPath(), getType(), name, true, resourceId));
+        }
+    }
+
+    private static List<Node> getLeaves(Iterable<Node> children) {
+        List<Node> leaves = newArrayList();
+
+        for (Node child : children) {
+            if (child.getLeaf()) {
+                leaves.add(child);
+            }
+        }
+
+        return leaves;
+    }
+
+    private static List<String> getValues(List<Node> leaves) {
+        return leaves.stream()
+                .map(Node::getValue)
+                .distinct()
+                .collect(toList());
+    }
+
+    /**
+     * Helper to key fetched resources by the {@link ImmutablePath} of the leaf pointing at them, in leaf order.
+     *
+     * @param leaves
+     * @param resources
+     * @return
+     */
+    private Map<ImmutablePath, T> byPath(List<Node> leaves, Map<String, T> resources) {
+        Map<ImmutablePath, T> byPath = newLinkedHashMap();
+
+        for (Node leaf : leaves) {
+            T resource = resources.get(leaf.getValue());
+
+            if (resource != null) {
+                byPath.put(ImmutablePath.from(leaf.getPath()), resource);
+            }
+        }
+
+        return byPath;
+    }
+
+    private List<String> getResourceIds(Path path) {
+        try (Stream<Node> nodes = treeMeIndex.streamAllByPath(path, getType()).orElseThrow(invalidPath)) {
+            return nodes.filter(Node::getLeaf)
+                    .map(Node::getValue)
+                    .collect(toList());
+        }
+    }
+
+    /**
+     * Check the copy the way the index will, so resources are only duplicated for copies that can
+     * succeed, then collect the resource IDs underneath the copied {@link Path}.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private List<String> getCopiedResourceIds(Path from, Path to) {
+        checkBeforeCopy(from.getPath(), to.getPath(),
+                treeMeIndex.getByPath(from, getType()),
+                treeMeIndex.getByPath(to, getType()),
+                treeMeIndex.getByPath(Path.from(parentOf(to.getPath())), getType()));
+
+        return getResourceIds(from);
+    }
+
+    /**
+     * Copy the tree, deleting the duplicated resources again if that fails, e.g. because the tree
+     * changed since the copy was checked.
+     *
+     * @param from
+     * @param to
+     * @param values
+     */
+    private void copyInIndex(Path from, Path to, Map<String, String> values) {
+        try {
+            treeMeIndex.copy(from, to, getType(), values);
+        } catch (RuntimeException e) {
+            List<String> duplicates = values.entrySet().stream()
+                    .filter(value -> !value.getKey().equals(value.getValue()))
+                    .map(Map.Entry::getValue)
+                    .collect(toList());
+
+            if (!duplicates.isEmpty()) {
+                try {
+                    onGroupDelete(duplicates);
+                } catch (RuntimeException cleanup) {
+                    LOG.error("Failed to delete resources duplicated for a failed copy: " + duplicates, cleanup);
+                    e.addSuppressed(cleanup);
+                }
+            }
+
+            throw e;
+        }
+    }
+
+    private void deleteFromIndex(Path path, Consumer<DeletedSubtree> callback) {
+        String deleted = path.getPath();
+        DeletedSubtree subtree = new DeletedSubtree();
+
+        // A single pass over the subtree deletes it and collects the resources underneath. The callback
+        // runs once the pass is done but before the delete commits, so if it fails the tree is left as is.
+        Runnable beforeCommit = () -> {
+            if (subtree.node == null) {
+                throw invalidPath.get();
+            }
+            callback.accept(subtree);
+        };
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(path, getType(), beforeCommit).orElseThrow(invalidPath)) {
+            nodes.forEach(next -> {
+                if (next.getPath().equals(deleted)) {
+                    subtree.node = next;
+                } else if (next.getLeaf()) {
+                    subtree.resourceIds.add(next.getValue());
+                }
+            });
         }
-        treeMeIndex.deleteByPath(path, getType());
     }
 
     /**
@@ -220,5 +659,10 @@ public abstract class AbstractTreeMeApi<T> implements TreeMeApi<T> {
         return new ANode(node.getPath(), node.getType(), node.getName(), node.getLeaf(), node.getValue(), newArrayList());
     }
 
+    private static class DeletedSubtree {
+        private Node node;
+        private final List<String> resourceIds = newArrayList();
+    }
+
     private Supplier<RuntimeException> invalidPath = () -> new RuntimeException("Invalid path.");
 }
@@ -0,0 +1,132 @@
+package tree.me.api;
+
+import org.reactivestreams.Publisher;
+import tree.me.core.api.ANode;
+import tree.me.core.api.ANodePage;
+import tree.me.core.api.AValueHolder;
+import tree.me.core.index.ImmutablePath;
+import tree.me.core.index.Path;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link TreeMeApi}. Every method returns immediately; failures complete the
+ * returned future exceptionally with the exception the blocking call would have thrown. {@link Path}s are
+ * copied before the call returns, so callers may keep extending them while the call runs.
+ */
+public interface AsyncTreeMeApi<T> {
+
+    /**
+     * See {@link TreeMeApi#getTree()}.
+     *
+     * @return
+     */
+    CompletableFuture<Iterable<ANode>> getTreeAsync();
+
+    /**
+     * See {@link TreeMeApi#get(Path)}.
+     *
+     * @param path
+     * @return
+     */
+    CompletableFuture<Optional<AValueHolder>> getAsync(Path path);
+
+    /**
+     * See {@link TreeMeApi#getResource(Path)}.
+     *
+     * @param path
+     * @return
+     */
+    CompletableFuture<Optional<T>> getResourceAsync(Path path);
+
+    /**
+     * See {@link TreeMeApi#getNodes(Collection)}.
+     *
+     * @param paths
+     * @return
+     */
+    CompletableFuture<Map<ImmutablePath, ANode>> getNodesAsync(Collection<Path> paths);
+
+    /**
+     * See {@link TreeMeApi#getGroup(Path)}.
+     *
+     * @param path
+     * @return
+     */
+    CompletableFuture<Optional<Iterable<ANode>>> getGroupAsync(Path path);
+
+    /**
+     * See {@link TreeMeApi#getGroup(Path, int, String)}.
+     *
+     * @param path
+     * @param pageSize
+     * @param token
+     * @return
+     */
+    CompletableFuture<Optional<ANodePage>> getGroupAsync(Path path, int pageSize, String token);
+
+    /**
+     * See {@link TreeMeApi#getGroupResources(Path)}.
+     *
+     * @param path
+     * @return
+     */
+    CompletableFuture<Optional<Map<ImmutablePath, T>>> getGroupResourcesAsync(Path path);
+
+    /**
+     * See {@link TreeMeApi#publishAll(Path)}.
+     *
+     * @param path
+     * @return
+     */
+    CompletableFuture<Optional<Publisher<ANode>>> publishAllAsync(Path path);
+
+    /**
+     * See {@link TreeMeApi#saveResource(Path, String, String, Object)}.
+     *
+     * @param path
+     * @param name
+     * @param resourceId
+     * @param resource
+     * @return
+     */
+    CompletableFuture<Void> saveResourceAsync(Path path, String name, String resourceId, T resource);
+
+    /**
+     * See {@link TreeMeApi#saveGroup(Path, String)}.
+     *
+     * @param path
+     * @param name
+     * @return
+     */
+    CompletableFuture<Void> saveGroupAsync(Path path, String name);
+
+    /**
+     * See {@link TreeMeApi#move(Path, Path)}.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    CompletableFuture<Void> moveAsync(Path from, Path to);
+
+    /**
+     * See {@link TreeMeApi#copy(Path, Path)}.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    CompletableFuture<Void> copyAsync(Path from, Path to);
+
+    /**
+     * See {@link TreeMeApi#delete(Path)}.
+     *
+     * @param path
+     * @return
+     */
+    CompletableFuture<Void> deleteAsync(Path path);
+}
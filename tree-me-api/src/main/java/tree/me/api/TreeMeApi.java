@@ -1,9 +1,14 @@
 package tree.me.api;
 
+import org.reactivestreams.Publisher;
 import tree.me.core.api.ANode;
+import tree.me.core.api.ANodePage;
 import tree.me.core.api.AValueHolder;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Path;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 public interface TreeMeApi<T> {
@@ -32,6 +37,16 @@ public interface TreeMeApi<T> {
      */
     Optional<T> getResource(Path path);
 
+    /**
+     * Fetch the groups and resources at many {@link Path}s at once, e.g. every level of a breadcrumb.
+     * {@link Path}s that don't exist are left out, the others are keyed by their {@link ImmutablePath}.
+     * As with {@link #getGroup(Path)}, the nodes do NOT have children information.
+     *
+     * @param paths
+     * @return
+     */
+    Map<ImmutablePath, ANode> getNodes(Collection<Path> paths);
+
     /**
      * Fetch all direct children under the {@link Path}. It's important to node, despite the fact
      * the {@link ANode} has a {@link ANode#getChildren()} method; when invoking this method
@@ -42,6 +57,38 @@ public interface TreeMeApi<T> {
      */
     Optional<Iterable<ANode>> getGroup(Path path);
 
+    /**
+     * Fetch one page of the direct children under the {@link Path}, ordered by path. Pass a
+     * {@code null} token for the first page and the previous page's {@link ANodePage#getNextToken()}
+     * for every page after that. As with {@link #getGroup(Path)}, the nodes do NOT have children information.
+     *
+     * @param path
+     * @param pageSize
+     * @param token
+     * @return
+     */
+    Optional<ANodePage> getGroup(Path path, int pageSize, String token);
+
+    /**
+     * Fetch the resources directly under the group at {@link Path} at once, by the {@link ImmutablePath} of each.
+     * Resources that can't be found are left out, and so are subgroups.
+     *
+     * @param path
+     * @return
+     */
+    Optional<Map<ImmutablePath, T>> getGroupResources(Path path);
+
+    /**
+     * Publish the group or resource at {@link Path} along with everything underneath it, read only as
+     * fast as subscribers request them so slow consumers don't buffer the whole subtree, e.g. exports.
+     * As with {@link #getGroup(Path)}, the nodes do NOT have children information. The nodes are read and
+     * emitted on the API's executor, so requesting never blocks the subscriber.
+     *
+     * @param path
+     * @return
+     */
+    Optional<Publisher<ANode>> publishAll(Path path);
+
     /**
      * Save a single {@link T} resource at {@link Path} with the name, resource ID and
      * the resource itself. There are several reasons for such a verbose
@@ -71,6 +118,24 @@ public interface TreeMeApi<T> {
      */
     void saveGroup(Path path, String name);
 
+    /**
+     * Move, or rename, the group or resource at {@link Path} along with everything underneath it.
+     * Resources themselves are left untouched, so no resource callbacks run.
+     *
+     * @param from
+     * @param to
+     */
+    void move(Path from, Path to);
+
+    /**
+     * Copy the group or resource at {@link Path} along with everything underneath it. The copies
+     * share their resources with the originals, unless the implementation duplicates them.
+     *
+     * @param from
+     * @param to
+     */
+    void copy(Path from, Path to);
+
     /**
      * Delete by {@link Path}.
      *
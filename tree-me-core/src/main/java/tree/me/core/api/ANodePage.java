@@ -0,0 +1,70 @@
+package tree.me.core.api;
+
+import com.google.common.base.Objects;
+
+import java.util.Collection;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One page of a group's children, plus the token to pass back for the next page. The token is
+ * {@code null} on the last page.
+ */
+public class ANodePage {
+
+    private Collection<ANode> nodes;
+    private String nextToken;
+
+    public ANodePage() {
+        this(newArrayList(), null);
+    }
+
+    public ANodePage(Collection<ANode> nodes, String nextToken) {
+        requireNonNull(nodes);
+        this.nodes = nodes;
+        this.nextToken = nextToken;
+    }
+
+    public Collection<ANode> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(Collection<ANode> nodes) {
+        this.nodes = nodes;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public void setNextToken(String nextToken) {
+        this.nextToken = nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ANodePage that = (ANodePage) o;
+        return Objects.equal(nodes, that.nodes) &&
+                Objects.equal(nextToken, that.nextToken);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(nodes, nextToken);
+    }
+
+    @Override
+    public String toString() {
+        return "ANodePage{" +
+                "nodes=" + nodes +
+                ", nextToken='" + nextToken + '\'' +
+                '}';
+    }
+}
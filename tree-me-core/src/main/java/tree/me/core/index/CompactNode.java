@@ -0,0 +1,114 @@
+package tree.me.core.index;
+
+import com.google.common.base.Objects;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static tree.me.core.index.Path.DELIM;
+import static tree.me.core.index.Path.ROOT;
+
+/**
+ * Immutable, compact form of a {@link Node} for holding many of them, e.g. in a cache. The type is an id
+ * in a {@link TypeDictionary}, and the path is split into the parent's path, shared with all siblings
+ * through a {@link ParentPathTable}, and the last path segment. A name equal to the last segment shares
+ * its string. The full path is only assembled by {@link #toNode(TypeDictionary)}.
+ */
+public final class CompactNode {
+
+    // null for the root and for paths that aren't encoded, the segment then holds the whole path
+    private final String parentPath;
+    private final String segment;
+    private final int type;
+    private final String name;
+    private final boolean leaf;
+    private final String value;
+
+    private CompactNode(String parentPath, String segment, int type, String name, boolean leaf, String value) {
+        this.parentPath = parentPath;
+        this.segment = segment;
+        this.type = type;
+        this.name = name != null && name.equals(segment) ? segment : name;
+        this.leaf = leaf;
+        this.value = value;
+    }
+
+    /**
+     * Compact form of a single {@link Node}.
+     *
+     * @param node
+     * @param types
+     * @param parents
+     * @return
+     */
+    public static CompactNode of(Node node, TypeDictionary types, ParentPathTable parents) {
+        String path = node.getPath();
+        String parentPath = parentPathOf(path);
+        String segment = parentPath == null ? path : path.substring(path.lastIndexOf(DELIM) + 1);
+
+        return new CompactNode(parentPath == null ? null : parents.intern(parentPath), segment,
+                types.idOf(node.getType()), node.getName(), node.getLeaf(), node.getValue());
+    }
+
+    /**
+     * Compact forms of the {@link Node}s in the same order.
+     *
+     * @param nodes
+     * @param types
+     * @param parents
+     * @return
+     */
+    public static List<CompactNode> compactAll(Iterable<? extends Node> nodes, TypeDictionary types, ParentPathTable parents) {
+        List<CompactNode> compacted = newArrayList();
+
+        for (Node node : nodes) {
+            compacted.add(of(node, types, parents));
+        }
+
+        return compacted;
+    }
+
+    /**
+     * Expand into a new {@link Node}, using the dictionary it was compacted with.
+     *
+     * @param types
+     * @return
+     */
+    public Node toNode(TypeDictionary types) {
+        String path = parentPath == null ? segment :
+                parentPath.equals(ROOT) ? ROOT + segment : parentPath + DELIM + segment;
+
+        return new Node(path, types.typeOf(type), name, leaf, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompactNode that = (CompactNode) o;
+        return type == that.type &&
+                leaf == that.leaf &&
+                Objects.equal(parentPath, that.parentPath) &&
+                Objects.equal(segment, that.segment) &&
+                Objects.equal(name, that.name) &&
+                Objects.equal(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(parentPath, segment, type, name, leaf, value);
+    }
+
+    /**
+     * Parent of the encoded path, {@code null} for the root and for paths that aren't encoded.
+     */
+    private static String parentPathOf(String path) {
+        int last = path.lastIndexOf(DELIM);
+
+        if (last < 0 || path.equals(ROOT)) {
+            return null;
+        }
+
+        return last == 0 ? ROOT : path.substring(0, last);
+    }
+}
@@ -0,0 +1,190 @@
+package tree.me.core.index;
+
+import com.google.common.base.Splitter;
+
+import static java.util.Objects.requireNonNull;
+import static tree.me.core.index.Path.DELIM;
+import static tree.me.core.index.Path.ROOT;
+
+/**
+ * Immutable path. Every path holds on to its parent and its own last segment, so paths built from a common
+ * parent share it, and the encoded form, depth and hash are computed once when the path is created. A
+ * {@link Path} is a mutable handle on one of these, so both encode paths the same way. Unlike {@link Path}
+ * it is equal to any path with the same encoded form and can be used as a key.
+ */
+public final class ImmutablePath implements Comparable<ImmutablePath> {
+
+    // exact inverse of the encoding; unlike delimited input, segments of encoded paths are never trimmed
+    private static final Splitter PATH_SPLITTER = Splitter.on(DELIM).omitEmptyStrings();
+
+    private static final ImmutablePath ROOT_PATH = new ImmutablePath(null, null);
+
+    private final ImmutablePath parent;
+    private final String segment;
+    private final String path;
+    private final int depth;
+    private final int hash;
+
+    private ImmutablePath(ImmutablePath parent, String segment) {
+        this.parent = parent;
+        this.segment = segment;
+
+        if (parent == null) {
+            this.path = ROOT;
+            this.depth = 0;
+        } else {
+            this.path = parent.isRoot() ? ROOT + segment : parent.path + DELIM + segment;
+            this.depth = parent.depth + 1;
+        }
+
+        this.hash = path.hashCode();
+    }
+
+    public static ImmutablePath root() {
+        return ROOT_PATH;
+    }
+
+    /**
+     * Parse an encoded path, as returned by {@link Path#getPath()} or {@link Node#getPath()}.
+     *
+     * @param path
+     * @return
+     */
+    public static ImmutablePath from(String path) {
+        return from(PATH_SPLITTER.split(path));
+    }
+
+    public static ImmutablePath from(Path path) {
+        return path.toImmutable();
+    }
+
+    public static ImmutablePath fromDelimited(String path, String delimiter) {
+        return from(Splitter.on(delimiter).trimResults().omitEmptyStrings().split(path));
+    }
+
+    private static ImmutablePath from(Iterable<String> segments) {
+        ImmutablePath result = ROOT_PATH;
+
+        for (String segment : segments) {
+            result = new ImmutablePath(result, segment);
+        }
+
+        return result;
+    }
+
+    /**
+     * Child path with the given last segment. Unlike {@link Path#to(String)} this path is left unchanged.
+     *
+     * @param to
+     * @return
+     */
+    public ImmutablePath to(String to) {
+        requireNonNull(to);
+
+        if (to.equals("")) {
+            throw new IllegalArgumentException("Empty string path argument not allowed");
+        }
+
+        if (to.contains(DELIM)) {
+            throw new IllegalArgumentException("Unicode character not allowed in path: \\u0001");
+        }
+
+        return new ImmutablePath(this, to);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Encoded path of the parent; like {@link Path#getParentPath()} the root is its own parent.
+     *
+     * @return
+     */
+    public String getParentPath() {
+        return isRoot() ? ROOT : parent.path;
+    }
+
+    /**
+     * The parent path, the root for the root itself.
+     *
+     * @return
+     */
+    public ImmutablePath getParent() {
+        return isRoot() ? this : parent;
+    }
+
+    /**
+     * Last segment of the path, {@code null} for the root.
+     *
+     * @return
+     */
+    public String getName() {
+        return segment;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isRoot() {
+        return parent == null;
+    }
+
+    /**
+     * Whether the other path lies strictly below this one. Walks up the other path's parents, without
+     * comparing any strings when both paths were built from the same parent objects.
+     *
+     * @param other
+     * @return
+     */
+    public boolean isAncestorOf(ImmutablePath other) {
+        if (other.depth <= depth) {
+            return false;
+        }
+
+        ImmutablePath ancestor = other;
+        while (ancestor.depth > depth) {
+            ancestor = ancestor.parent;
+        }
+
+        return ancestor == this || ancestor.equals(this);
+    }
+
+    /**
+     * Mutable {@link Path} starting out at this path, for APIs taking a {@link Path}.
+     *
+     * @return
+     */
+    public Path toPath() {
+        return Path.from(this);
+    }
+
+    /**
+     * Orders paths the same way the indexes do: by encoded path, so a path sorts right before its descendants.
+     */
+    @Override
+    public int compareTo(ImmutablePath other) {
+        return this == other ? 0 : path.compareTo(other.path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ImmutablePath that = (ImmutablePath) o;
+        return hash == that.hash && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ImmutablePath{" +
+                "path=" + path.substring(1).replace(DELIM, "/") +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+package tree.me.core.index;
+
+import com.google.common.base.Objects;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One page of {@link Node}s ordered by path, plus the token to pass back for the next page. The token
+ * is {@code null} on the last page.
+ */
+public class NodePage {
+
+    private List<Node> nodes;
+    private String nextToken;
+
+    public NodePage() {
+        this(newArrayList(), null);
+    }
+
+    public NodePage(List<Node> nodes, String nextToken) {
+        requireNonNull(nodes);
+        this.nodes = nodes;
+        this.nextToken = nextToken;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public void setNextToken(String nextToken) {
+        this.nextToken = nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /**
+     * Build a page from up to {@code pageSize + 1} {@link Node}s sorted by path. The extra
+     * {@link Node}, if present, only signals that another page follows and is dropped.
+     *
+     * @param nodes
+     * @param pageSize
+     * @return
+     */
+    public static NodePage of(List<Node> nodes, int pageSize) {
+        if (nodes.size() <= pageSize) {
+            return new NodePage(nodes, null);
+        }
+
+        List<Node> page = newArrayList(nodes.subList(0, pageSize));
+        return new NodePage(page, encodeToken(page.get(pageSize - 1).getPath()));
+    }
+
+    /**
+     * Opaque continuation token for the page following the encoded path.
+     *
+     * @param lastPath
+     * @return
+     */
+    public static String encodeToken(String lastPath) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastPath.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encoded path every {@link Node} of the next page sorts after. A {@code null} token starts at the
+     * first page, which is everything after the empty string.
+     *
+     * @param token
+     * @return
+     */
+    public static String decodeToken(String token) {
+        if (token == null) {
+            return "";
+        }
+
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+    }
+
+    /**
+     * Check the page size requested from an index.
+     *
+     * @param pageSize
+     */
+    public static void checkPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1, got " + pageSize + ".");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NodePage nodePage = (NodePage) o;
+        return Objects.equal(nodes, nodePage.nodes) &&
+                Objects.equal(nextToken, nodePage.nextToken);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(nodes, nextToken);
+    }
+
+    @Override
+    public String toString() {
+        return "NodePage{" +
+                "nodes=" + nodes +
+                ", nextToken='" + nextToken + '\'' +
+                '}';
+    }
+}
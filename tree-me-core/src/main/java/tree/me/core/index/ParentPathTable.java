@@ -0,0 +1,18 @@
+package tree.me.core.index;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Shares the parent paths of {@link CompactNode}s, so all children of a parent hold the same string, no
+ * matter when they were compacted. Paths are held weakly and dropped once no {@link CompactNode} refers to
+ * them. Scope a table like a {@link TypeDictionary}, e.g. one per cache.
+ */
+public final class ParentPathTable {
+
+    private final Interner<String> paths = Interners.newWeakInterner();
+
+    public String intern(String path) {
+        return paths.intern(path);
+    }
+}
@@ -1,88 +1,135 @@
 package tree.me.core.index;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
-
-import java.util.List;
-
-import static com.google.common.collect.Lists.newArrayList;
-import static java.util.Objects.requireNonNull;
-
+/**
+ * Mutable path, extended in place by {@link #to(String)}. It is a handle on an {@link ImmutablePath}, so
+ * encoding, copying and extending never re-parse the path. Paths compare by identity; use
+ * {@link #toImmutable()} for a value that can be compared or used as a key.
+ */
 public class Path {
 
     public static final String ROOT = "\u0001";
     public static final String DELIM = ROOT;
 
-    private static final Joiner PATH_TO_STRING_JOINER = Joiner.on("/");
-    private static final Joiner PATH_JOINER = Joiner.on(DELIM);
-    private static final Splitter PATH_SPLITTER = Splitter.on(DELIM).trimResults().omitEmptyStrings();
-
-    private List<String> path;
+    private ImmutablePath path;
 
     public Path() {
-        this.path = newArrayList();
+        this.path = ImmutablePath.root();
     }
 
     public Path(Path path) {
-        this.path = newArrayList(PATH_SPLITTER.split(path.getPath()));
+        this.path = path.path;
     }
 
-    private Path(String path) {
-        this.path = newArrayList(PATH_SPLITTER.split(path));
-    }
-
-    private Path(String path, String delimiter) {
-        Splitter splitter = Splitter.on(delimiter).trimResults().omitEmptyStrings();
-        this.path = newArrayList(splitter.split(path));
+    private Path(ImmutablePath path) {
+        this.path = path;
     }
 
     public String getPath() {
-        return path.size() == 1 ? ROOT + path.get(0) : ROOT + PATH_JOINER.join(path);
+        return path.getPath();
     }
 
     public String getParentPath() {
-        return path.size() == 0 || path.size() == 1 ? ROOT : ROOT + PATH_JOINER.join(path.subList(0, path.size() - 1));
+        return path.getParentPath();
     }
 
     public boolean isRoot() {
-        return path.size() == 0;
+        return path.isRoot();
     }
 
     public Path to(String to) {
-        requireNonNull(to);
-
-        if (to.equals("")) {
-            throw new IllegalArgumentException("Empty string path argument not allowed");
-        }
-
-        if (to.contains(DELIM)) {
-            throw new IllegalArgumentException("Unicode character not allowed in path: \u0000");
-        }
-
-        path.add(to);
+        path = path.to(to);
 
         return this;
     }
 
+    /**
+     * The path as it is now, unaffected by later calls to {@link #to(String)}.
+     *
+     * @return
+     */
+    public ImmutablePath toImmutable() {
+        return path;
+    }
+
     public static Path from(Path path) {
         return new Path(path);
     }
 
-    public static Path from(String path) {
-        if (path.equals(ROOT)) {
-            return new Path();
-        }
+    public static Path from(ImmutablePath path) {
         return new Path(path);
     }
 
+    public static Path from(String path) {
+        return new Path(ImmutablePath.from(path));
+    }
+
     public static Path fromDelimited(String path, String delimiter) {
-        return new Path(path, delimiter);
+        return new Path(ImmutablePath.fromDelimited(path, delimiter));
+    }
+
+    /**
+     * Every encoded path underneath the encoded path starts with this prefix. Children of the root are
+     * encoded directly after the root delimiter, everything else after an extra delimiter.
+     *
+     * @param path
+     * @return
+     */
+    public static String descendantPrefix(String path) {
+        return path.equals(ROOT) ? ROOT : path + DELIM;
+    }
+
+    /**
+     * Smallest string sorting after every string that starts with the prefix, which makes
+     * [path, successor(descendantPrefix(path))) the key range holding a path and all its descendants.
+     * Prefixes always end in the delimiter, so incrementing the last character can't overflow.
+     *
+     * @param prefix
+     * @return
+     */
+    public static String successor(String prefix) {
+        int last = prefix.length() - 1;
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    /**
+     * Parent of the encoded path without parsing it; like {@link #getParentPath()} the root is its own parent.
+     *
+     * @param path
+     * @return
+     */
+    public static String parentOf(String path) {
+        int last = path.lastIndexOf(DELIM);
+        return last <= 0 ? ROOT : path.substring(0, last);
+    }
+
+    /**
+     * Encoded path a node of the subtree at {@code from} ends up at once the subtree is moved to
+     * {@code to}. The root can't be moved, so {@code from} is never the root.
+     *
+     * @param path
+     * @param from
+     * @param to
+     * @return
+     */
+    public static String rebase(String path, String from, String to) {
+        return to + path.substring(from.length());
+    }
+
+    /**
+     * Whether the encoded candidate is the encoded path itself or one of its descendants.
+     *
+     * @param path
+     * @param candidate
+     * @return
+     */
+    public static boolean isSubtreeOf(String path, String candidate) {
+        return candidate.equals(path) || candidate.startsWith(descendantPrefix(path));
     }
 
     @Override
     public String toString() {
         return "Path{" +
-                "path=" + PATH_TO_STRING_JOINER.join(path) +
+                "path=" + path.getPath().substring(1).replace(DELIM, "/") +
                 '}';
     }
 }
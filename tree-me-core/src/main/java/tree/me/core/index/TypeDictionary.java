@@ -0,0 +1,50 @@
+package tree.me.core.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps {@link Node} types to small ints and back. There are only ever a handful of types, so nodes can
+ * store the int instead of a reference to the type string. Scope a dictionary to whatever holds the
+ * nodes, e.g. one per cache, so it goes away with them.
+ */
+public final class TypeDictionary {
+
+    private static final int NO_TYPE = -1;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] types = new String[0];
+
+    public int idOf(String type) {
+        if (type == null) {
+            return NO_TYPE;
+        }
+
+        Integer id = ids.get(type);
+        return id != null ? id : register(type);
+    }
+
+    public String typeOf(int id) {
+        return id == NO_TYPE ? null : types[id];
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    private synchronized int register(String type) {
+        Integer id = ids.get(type);
+
+        if (id == null) {
+            id = types.length;
+            String[] grown = Arrays.copyOf(types, id + 1);
+            grown[id] = type;
+            // publish the name before the id, so every id handed out resolves
+            types = grown;
+            ids.put(type, id);
+        }
+
+        return id;
+    }
+}
@@ -0,0 +1,62 @@
+package tree.me.service;
+
+import com.google.common.base.Objects;
+import tree.me.core.index.Path;
+
+/**
+ * Sort key of a {@link tree.me.core.index.Node} in sorted, embedded {@link TreeMeIndex}es. Keys sort by
+ * type first and encoded path second, so a {@link tree.me.core.index.Node} and all its descendants form
+ * one contiguous range.
+ */
+public final class NodeKey implements Comparable<NodeKey> {
+
+    private final String type;
+    private final String path;
+
+    public NodeKey(String type, String path) {
+        this.type = type;
+        this.path = path;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * First key after this key and all its descendants.
+     *
+     * @return
+     */
+    public NodeKey subtreeEnd() {
+        return new NodeKey(type, Path.successor(Path.descendantPrefix(path)));
+    }
+
+    @Override
+    public int compareTo(NodeKey other) {
+        int compare = type.compareTo(other.type);
+        return compare != 0 ? compare : path.compareTo(other.path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NodeKey nodeKey = (NodeKey) o;
+        return Objects.equal(type, nodeKey.type) &&
+                Objects.equal(path, nodeKey.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(type, path);
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + path;
+    }
+}
@@ -1,9 +1,28 @@
 package tree.me.service;
 
+import org.reactivestreams.Publisher;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
 import tree.me.core.index.Path;
+import tree.me.service.reactive.StreamPublisher;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Collections.emptyMap;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+import static tree.me.core.index.NodePage.checkPageSize;
+import static tree.me.core.index.NodePage.decodeToken;
+import static tree.me.core.index.Path.parentOf;
+import static tree.me.core.index.Path.rebase;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCopy;
+import static tree.me.service.TreeMeIndexRules.checkBeforeMove;
 
 public interface TreeMeIndex {
 
@@ -16,6 +35,64 @@ public interface TreeMeIndex {
      */
     Optional<Node> getByPath(Path path, String type);
 
+    /**
+     * Fetch the {@link Node}s at many {@link Path}s at once. {@link Path}s without a {@link Node} are left
+     * out of the result; the others map from their {@link ImmutablePath} to their {@link Node} in the order
+     * they were given in.
+     *
+     * @param paths
+     * @param type
+     * @return
+     */
+    default Map<ImmutablePath, Node> getByPaths(Collection<Path> paths, String type) {
+        Map<ImmutablePath, Node> found = newLinkedHashMap();
+
+        for (Path path : paths) {
+            getByPath(path, type).ifPresent(node -> found.put(path.toImmutable(), node));
+        }
+
+        return found;
+    }
+
+    /**
+     * Whether there is a {@link Node} at the {@link Path}.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    default boolean exists(Path path, String type) {
+        return getByPath(path, type).isPresent();
+    }
+
+    /**
+     * Number of direct children under the {@link Node} with specified {@link Path}, 0 if there is no such
+     * {@link Node}.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    default long countChildren(Path path, String type) {
+        return getChildrenByPath(path, type)
+                .map(children -> StreamSupport.stream(children.spliterator(), false).count())
+                .orElse(0L);
+    }
+
+    /**
+     * Number of {@link Node}s anywhere underneath the {@link Node} with specified {@link Path}, not counting
+     * the {@link Node} itself, 0 if there is no such {@link Node}.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    default long countDescendants(Path path, String type) {
+        return getAllByPath(path, type)
+                .map(nodes -> StreamSupport.stream(nodes.spliterator(), false).count() - 1)
+                .orElse(0L);
+    }
+
     /**
      * Fetch all direct children {@link Node} under the {@link Node} with specified {@link Path}.
      *
@@ -25,6 +102,30 @@ public interface TreeMeIndex {
      */
     Optional<Iterable<Node>> getChildrenByPath(Path path, String type);
 
+    /**
+     * Fetch one page of the direct children {@link Node} under the {@link Node} with specified {@link Path},
+     * ordered by path. Pass a {@code null} token for the first page and the previous page's
+     * {@link NodePage#getNextToken()} for every page after that.
+     *
+     * @param path
+     * @param type
+     * @param pageSize
+     * @param token
+     * @return
+     */
+    default Optional<NodePage> getChildrenByPath(Path path, String type, int pageSize, String token) {
+        checkPageSize(pageSize);
+        String after = decodeToken(token);
+
+        return getChildrenByPath(path, type).map(children -> NodePage.of(
+                StreamSupport.stream(children.spliterator(), false)
+                        .filter(child -> child.getPath().compareTo(after) > 0)
+                        .sorted(comparing(Node::getPath))
+                        .limit(pageSize + 1L)
+                        .collect(toList()),
+                pageSize));
+    }
+
     /**
      * Fetch ALL children {@link Node} under the {@link Node} with specified {@link Path}.
      *
@@ -34,6 +135,39 @@ public interface TreeMeIndex {
      */
     Optional<Iterable<Node>> getAllByPath(Path path, String type);
 
+    /**
+     * Stream ALL children {@link Node} under the {@link Node} with specified {@link Path}. Implementations
+     * may decode {@link Node}s lazily while the stream is consumed and hold on to resources until it is
+     * closed, so always close the stream, e.g. with try-with-resources.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    default Optional<Stream<Node>> streamAllByPath(Path path, String type) {
+        return getAllByPath(path, type).map(nodes -> StreamSupport.stream(nodes.spliterator(), false));
+    }
+
+    /**
+     * Publish ALL children {@link Node} under the {@link Node} with specified {@link Path}, reading them only
+     * as fast as subscribers request them, e.g. to feed a slow downstream system. Each subscriber streams the
+     * subtree through {@link #streamAllByPath(Path, String)} on its first request and closes the stream once
+     * it completes or cancels, so a subscriber that stops requesting holds the stream open until it cancels.
+     * The subtree is read on the requesting thread, so requests block while it reads; wrap
+     * {@link #streamAllByPath(Path, String)} in a {@link StreamPublisher} with an executor to avoid that.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    default Optional<Publisher<Node>> publishAllByPath(Path path, String type) {
+        if (!exists(path, type)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new StreamPublisher<>(() -> streamAllByPath(path, type).orElseGet(Stream::empty)));
+    }
+
     /**
      * Save a {@link Node}. Calls to save overwrite existing {@link Node}.
      *
@@ -42,11 +176,134 @@ public interface TreeMeIndex {
     void save(Node node);
 
     /**
-     * /**
+     * Save many {@link Node}s at once. Parents may be part of the same batch, regardless of the
+     * order they are given in. Implementations should save either every {@link Node} or none; the
+     * default is NOT atomic, it saves the {@link Node}s one by one, parents first, and stops at the
+     * first failure, leaving the {@link Node}s saved before it in place.
+     *
+     * @param nodes
+     */
+    default void saveAll(Iterable<Node> nodes) {
+        StreamSupport.stream(nodes.spliterator(), false)
+                .sorted(comparing(Node::getPath))
+                .forEach(this::save);
+    }
+
+    /**
+     * Move the {@link Node} with specified {@link Path} and ALL children under it to another {@link Path},
+     * keeping their names and values. The target {@link Path} must not exist yet and needs an existing,
+     * non-leaf parent. Implementations should move the whole subtree at once; by default it is saved
+     * under the new {@link Path} and then deleted from the old one.
+     *
+     * @param from
+     * @param to
+     * @param type
+     */
+    default void move(Path from, Path to, String type) {
+        String source = from.getPath();
+        String target = to.getPath();
+
+        checkBeforeMove(source, target, getByPath(from, type), getByPath(to, type),
+                getByPath(Path.from(parentOf(target)), type));
+
+        saveAll(StreamSupport.stream(getAllByPath(from, type).get().spliterator(), false)
+                .map(node -> new Node(rebase(node.getPath(), source, target), node.getType(), node.getName(),
+                        node.getLeaf(), node.getValue()))
+                .collect(toList()));
+        deleteByPath(from, type);
+    }
+
+    /**
+     * Copy the {@link Node} with specified {@link Path} and ALL children under it to another {@link Path}.
+     * The target {@link Path} must not exist yet and needs an existing, non-leaf parent.
+     *
+     * @param from
+     * @param to
+     * @param type
+     */
+    default void copy(Path from, Path to, String type) {
+        copy(from, to, type, emptyMap());
+    }
+
+    /**
+     * Copy the {@link Node} with specified {@link Path} and ALL children under it to another {@link Path},
+     * replacing the values of copied leaves found in {@code values} by the value they map to, e.g. the IDs of
+     * duplicated resources. Either the whole subtree is copied or nothing is; by default it is read and saved
+     * under the new {@link Path} in one batch.
+     *
+     * @param from
+     * @param to
+     * @param type
+     * @param values
+     */
+    default void copy(Path from, Path to, String type, Map<String, String> values) {
+        String source = from.getPath();
+        String target = to.getPath();
+
+        checkBeforeCopy(source, target, getByPath(from, type), getByPath(to, type),
+                getByPath(Path.from(parentOf(target)), type));
+
+        saveAll(StreamSupport.stream(getAllByPath(from, type).get().spliterator(), false)
+                .map(node -> {
+                    String value = node.getLeaf() ? values.getOrDefault(node.getValue(), node.getValue()) : node.getValue();
+                    return new Node(rebase(node.getPath(), source, target), type, node.getName(), node.getLeaf(), value);
+                })
+                .collect(toList()));
+    }
+
+    /**
      * Delete a {@link Node} by {@link Path}.
      *
      * @param path
      */
     void deleteByPath(Path path, String type);
 
+    /**
+     * Delete the {@link Node} with specified {@link Path} and ALL children under it, returning the deleted
+     * {@link Node}s. Implementations streaming straight from storage only commit the delete once the stream
+     * has been fully consumed, and undo it if the stream is closed before that, so always consume and close
+     * the stream, e.g. with try-with-resources.
+     *
+     * @param path
+     * @param type
+     * @return the deleted {@link Node}s, empty if there is no {@link Node} at the {@link Path}
+     */
+    default Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type) {
+        Optional<Iterable<Node>> deleted = getAllByPath(path, type);
+
+        if (deleted.isPresent()) {
+            deleteByPath(path, type);
+        }
+
+        return deleted.map(nodes -> StreamSupport.stream(nodes.spliterator(), false));
+    }
+
+    /**
+     * Like {@link #deleteAndReturnByPath(Path, String)}, additionally running {@code beforeCommit} once every
+     * deleted {@link Node} has been consumed from the stream, before the delete takes effect. If it throws,
+     * nothing is deleted and the exception is thrown from the stream. The callback runs while the delete is
+     * still pending, so it shouldn't change the subtree through this index.
+     * <p>
+     * By default the subtree is read first and only deleted once the callback returned, so {@link Node}s
+     * added to the subtree in between are deleted unseen. Implementations may instead hold a lock until the
+     * stream is exhausted or closed, so keep the callback short.
+     *
+     * @param path
+     * @param type
+     * @param beforeCommit
+     * @return the deleted {@link Node}s, empty if there is no {@link Node} at the {@link Path}
+     */
+    default Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type, Runnable beforeCommit) {
+        return getAllByPath(path, type).map(nodes -> {
+            // only pulled from once the read nodes are exhausted
+            Stream<Node> delete = Stream.of(path).flatMap(deleted -> {
+                beforeCommit.run();
+                deleteByPath(deleted, type);
+                return Stream.empty();
+            });
+
+            return Stream.concat(StreamSupport.stream(nodes.spliterator(), false), delete);
+        });
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package tree.me.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tree.me.core.index.Node;
+import tree.me.service.exception.TreeMeSaveException;
+
+import java.util.Optional;
+
+import static tree.me.core.index.Path.ROOT;
+import static tree.me.core.index.Path.isSubtreeOf;
+import static tree.me.core.index.Path.parentOf;
+
+/**
+ * Consistency rules every {@link TreeMeIndex} enforces when saving a {@link Node}.
+ */
+public final class TreeMeIndexRules {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TreeMeIndexRules.class);
+
+    private TreeMeIndexRules() {
+    }
+
+    /**
+     * Check a {@link Node} that does not exist yet can be created under its parent. Root nodes have
+     * no parent and can't be leaves; every other {@link Node} needs an existing, non-leaf parent.
+     *
+     * @param node
+     * @param parent
+     */
+    public static void checkBeforeCreate(Node node, Optional<Node> parent) {
+        String path = node.getPath();
+
+        if (path.equals(ROOT)) {
+            if (node.getLeaf()) {
+                String msg = "Root nodes can't be leaf nodes.";
+                LOG.error(msg);
+                throw new TreeMeSaveException(msg);
+            }
+            return;
+        }
+
+        if (!parent.isPresent()) {
+            String msg = "Parent of path: " + path +
+                    " doesn't exist. Searched for parent: " + parentOf(path) + ".";
+            LOG.error(msg);
+            throw new TreeMeSaveException(msg);
+        }
+
+        if (parent.get().getLeaf()) {
+            String msg = "Parent is a leaf node. Unable to save node.";
+            LOG.error(msg);
+            throw new TreeMeSaveException(msg);
+        }
+    }
+
+    /**
+     * Check the subtree at {@code from} can be moved to {@code to}: it exists and isn't the root, nothing
+     * exists at {@code to} yet, {@code to} isn't inside the subtree itself and has an existing, non-leaf parent.
+     *
+     * @param from
+     * @param to
+     * @param moved
+     * @param target
+     * @param parent
+     */
+    public static void checkBeforeMove(String from, String to, Optional<Node> moved, Optional<Node> target,
+                                       Optional<Node> parent) {
+        checkBeforeRebase("move", "moved", from, to, moved, target, parent);
+    }
+
+    /**
+     * Check the subtree at {@code from} can be copied to {@code to}, under the same conditions as a move.
+     *
+     * @param from
+     * @param to
+     * @param copied
+     * @param target
+     * @param parent
+     */
+    public static void checkBeforeCopy(String from, String to, Optional<Node> copied, Optional<Node> target,
+                                       Optional<Node> parent) {
+        checkBeforeRebase("copy", "copied", from, to, copied, target, parent);
+    }
+
+    private static void checkBeforeRebase(String action, String done, String from, String to,
+                                          Optional<Node> source, Optional<Node> target, Optional<Node> parent) {
+        String msg = null;
+
+        if (from.equals(ROOT)) {
+            msg = "The root node can't be " + done + ".";
+        } else if (!source.isPresent()) {
+            msg = "Nothing to " + action + " at path: " + from + ".";
+        } else if (isSubtreeOf(from, to)) {
+            msg = "Path: " + from + " can't be " + done + " underneath itself.";
+        } else if (target.isPresent()) {
+            msg = "Path: " + to + " already exists. Unable to " + action + " node.";
+        } else if (!parent.isPresent()) {
+            msg = "Parent of path: " + to + " doesn't exist. Searched for parent: " + parentOf(to) + ".";
+        } else if (parent.get().getLeaf()) {
+            msg = "Parent is a leaf node. Unable to " + action + " node.";
+        }
+
+        if (msg != null) {
+            LOG.error(msg);
+            throw new TreeMeSaveException(msg);
+        }
+    }
+
+    /**
+     * Check an existing {@link Node} can be overwritten by the latest version.
+     *
+     * @param previous
+     * @param latest
+     */
+    public static void checkBeforeUpdate(Node previous, Node latest) {
+        // Ensure the Node to be save is not converting from non-leaf to a leaf.
+        // This would cause inconsistencies in the tree.
+        if (!previous.getLeaf() && latest.getLeaf()) {
+            String msg = "You're trying to convert a non-leaf to a leaf. " +
+                    "This is not allowed to prevent breaking the tree links.";
+            LOG.error(msg);
+            throw new TreeMeSaveException(msg);
+        }
+
+        // Ensure the root Node type does not get changed.
+        if (latest.getPath().equals(ROOT)) {
+            if (!previous.getType().equals(latest.getType())) {
+                String msg = "You're trying to convert change name of a type. This is not allowed.";
+                LOG.error(msg);
+                throw new TreeMeSaveException(msg);
+            }
+        }
+    }
+}
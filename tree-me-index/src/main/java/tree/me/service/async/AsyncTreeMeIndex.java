@@ -0,0 +1,68 @@
+package tree.me.service.async;
+
+import tree.me.core.index.Node;
+import tree.me.core.index.Path;
+import tree.me.service.TreeMeIndex;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link TreeMeIndex}. Every method returns immediately; failures
+ * complete the returned future exceptionally with the exception the blocking call would have thrown.
+ */
+public interface AsyncTreeMeIndex {
+
+    /**
+     * Fetch a {@link Node} by {@link Path} and model.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    CompletableFuture<Optional<Node>> getByPath(Path path, String type);
+
+    /**
+     * Fetch all direct children {@link Node} under the {@link Node} with specified {@link Path}.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    CompletableFuture<Optional<Iterable<Node>>> getChildrenByPath(Path path, String type);
+
+    /**
+     * Fetch ALL children {@link Node} under the {@link Node} with specified {@link Path}.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    CompletableFuture<Optional<Iterable<Node>>> getAllByPath(Path path, String type);
+
+    /**
+     * Save a {@link Node}. Calls to save overwrite existing {@link Node}.
+     *
+     * @param node
+     * @return
+     */
+    CompletableFuture<Void> save(Node node);
+
+    /**
+     * Save many {@link Node}s at once. Either every {@link Node} is saved or none are.
+     *
+     * @param nodes
+     * @return
+     */
+    CompletableFuture<Void> saveAll(Iterable<Node> nodes);
+
+    /**
+     * Delete a {@link Node} by {@link Path}.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    CompletableFuture<Void> deleteByPath(Path path, String type);
+
+}
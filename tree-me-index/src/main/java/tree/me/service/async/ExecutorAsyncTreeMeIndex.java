@@ -0,0 +1,105 @@
+package tree.me.service.async;
+
+import tree.me.core.index.Node;
+import tree.me.core.index.Path;
+import tree.me.service.TreeMeIndex;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * {@link AsyncTreeMeIndex} running each call of a blocking {@link TreeMeIndex} on an {@link Executor}.
+ * Without an explicit executor one from {@link TreeMeExecutors#newBlockingExecutor()} is created, which
+ * is shut down again by {@link #close()}; executors passed in are left to their owner. {@link Path}s and
+ * {@link Node}s are copied before the call returns, so callers may keep changing them while the call runs.
+ */
+public class ExecutorAsyncTreeMeIndex implements AsyncTreeMeIndex, AutoCloseable {
+
+    private final TreeMeIndex treeMeIndex;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    public ExecutorAsyncTreeMeIndex(TreeMeIndex treeMeIndex) {
+        this(treeMeIndex, TreeMeExecutors.newBlockingExecutor(), true);
+    }
+
+    public ExecutorAsyncTreeMeIndex(TreeMeIndex treeMeIndex, Executor executor) {
+        this(treeMeIndex, executor, false);
+    }
+
+    private ExecutorAsyncTreeMeIndex(TreeMeIndex treeMeIndex, Executor executor, boolean ownsExecutor) {
+        requireNonNull(treeMeIndex);
+        requireNonNull(executor);
+        this.treeMeIndex = treeMeIndex;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    public CompletableFuture<Optional<Node>> getByPath(Path path, String type) {
+        Path from = Path.from(path);
+        return supplyAsync(() -> treeMeIndex.getByPath(from, type), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Iterable<Node>>> getChildrenByPath(Path path, String type) {
+        Path from = Path.from(path);
+        return supplyAsync(() -> treeMeIndex.getChildrenByPath(from, type), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Iterable<Node>>> getAllByPath(Path path, String type) {
+        Path from = Path.from(path);
+        return supplyAsync(() -> treeMeIndex.getAllByPath(from, type), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(Node node) {
+        Node saved = copy(node);
+        return runAsync(() -> treeMeIndex.save(saved), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAll(Iterable<Node> nodes) {
+        List<Node> saved = newArrayList();
+        nodes.forEach(node -> saved.add(copy(node)));
+        return runAsync(() -> treeMeIndex.saveAll(saved), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByPath(Path path, String type) {
+        Path from = Path.from(path);
+        return runAsync(() -> treeMeIndex.deleteByPath(from, type), executor);
+    }
+
+    private static Node copy(Node node) {
+        return new Node(node.getPath(), node.getType(), node.getName(), node.getLeaf(), node.getValue());
+    }
+
+    /**
+     * The blocking {@link TreeMeIndex} calls are delegated to.
+     *
+     * @return
+     */
+    public TreeMeIndex getTreeMeIndex() {
+        return treeMeIndex;
+    }
+
+    /**
+     * Shuts down the executor if it was created by this index. Calls already submitted still complete.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package tree.me.service.async;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors suited to running blocking index and resource calls off the caller's thread.
+ */
+public final class TreeMeExecutors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TreeMeExecutors.class);
+
+    private TreeMeExecutors() {
+    }
+
+    /**
+     * Executor starting a virtual thread per task when the JVM supports them (Java 21+). Older JVMs
+     * get a cached pool of daemon platform threads instead. Either way tasks never queue behind each
+     * other, so blocking calls are only throttled by the resources they wait on, e.g. a connection pool.
+     *
+     * @return
+     */
+    public static ExecutorService newBlockingExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("Virtual threads unavailable, falling back to platform threads.");
+            return Executors.newCachedThreadPool(daemonThreads("tree-me-async-"));
+        }
+    }
+
+    /**
+     * Shared {@link #newBlockingExecutor()}, created on first use and never shut down, for callers that
+     * have no lifecycle to tie an executor of their own to. Idle, it holds on to no threads.
+     *
+     * @return
+     */
+    public static Executor sharedBlockingExecutor() {
+        return SharedBlockingExecutor.INSTANCE;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class SharedBlockingExecutor {
+        private static final ExecutorService INSTANCE = newBlockingExecutor();
+    }
+}
@@ -0,0 +1,421 @@
+package tree.me.service.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import tree.me.core.index.CompactNode;
+import tree.me.core.index.ImmutablePath;
+import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
+import tree.me.core.index.ParentPathTable;
+import tree.me.core.index.Path;
+import tree.me.core.index.TypeDictionary;
+import tree.me.service.TreeMeIndex;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Objects.requireNonNull;
+import static tree.me.core.index.Path.ROOT;
+import static tree.me.core.index.Path.parentOf;
+
+/**
+ * Read-through cache in front of another {@link TreeMeIndex}. Single {@link Node}s, child lists and
+ * subtree lists are cached separately, including lookups that found nothing, and evicted once the
+ * caches grow past {@code maximumSize} or an entry is older than {@code expireAfterWriteMillis}. The
+ * list caches are bounded by the total number of {@link Node}s they hold rather than by entries.
+ * Cached {@link Node}s are kept as {@link CompactNode}s, with types and parent paths held in tables owned
+ * by this index, and handed out as new {@link Node}s.
+ * <p>
+ * Writes made through this index invalidate everything they could have changed: the {@link Node}
+ * itself, its parent's child list and the subtree lists of all its ancestors. Deletes additionally
+ * drop every cached entry underneath the deleted {@link Path}. Writes made through other instances
+ * are only seen once the cached entries expire.
+ */
+public class CachingTreeMeIndex implements TreeMeIndex {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_EXPIRE_AFTER_WRITE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final TreeMeIndex delegate;
+    private final TypeDictionary types = new TypeDictionary();
+    private final ParentPathTable parents = new ParentPathTable();
+    private final Cache<Key, Optional<CompactNode>> nodes;
+    private final Cache<Key, Optional<List<CompactNode>>> children;
+    private final Cache<Key, Optional<List<CompactNode>>> subtrees;
+
+    // Bumped by every write, so loads that raced with a write don't leave stale entries behind.
+    private final AtomicLong version = new AtomicLong();
+
+    public CachingTreeMeIndex(TreeMeIndex delegate, long maximumSize, long expireAfterWriteMillis) {
+        requireNonNull(delegate);
+
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be at least 1.");
+        }
+
+        if (expireAfterWriteMillis < 1) {
+            throw new IllegalArgumentException("Cache expiry must be at least 1ms.");
+        }
+
+        this.delegate = delegate;
+        this.nodes = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.children = newListCache(maximumSize, expireAfterWriteMillis);
+        this.subtrees = newListCache(maximumSize, expireAfterWriteMillis);
+    }
+
+    @Override
+    public Optional<Node> getByPath(Path path, String type) {
+        return load(nodes, new Key(type, path.getPath()), () -> delegate.getByPath(path, type).map(this::compact))
+                .map(compact -> compact.toNode(types));
+    }
+
+    /**
+     * Cached {@link Node}s are served from the cache, everything else is fetched from the delegate
+     * with a single call.
+     *
+     * @param paths
+     * @param type
+     * @return
+     */
+    @Override
+    public Map<ImmutablePath, Node> getByPaths(Collection<Path> paths, String type) {
+        Map<ImmutablePath, Node> found = newLinkedHashMap();
+        List<Path> missing = newArrayList();
+
+        for (Path path : paths) {
+            Optional<CompactNode> cached = nodes.getIfPresent(new Key(type, path.getPath()));
+
+            if (cached == null) {
+                missing.add(path);
+            }
+            // paths still to be loaded hold their place in the order
+            found.put(path.toImmutable(), cached == null ? null : cached.map(compact -> compact.toNode(types)).orElse(null));
+        }
+
+        if (!missing.isEmpty()) {
+            long before = version.get();
+            Map<ImmutablePath, Node> loaded = delegate.getByPaths(missing, type);
+
+            for (Path path : missing) {
+                Node node = loaded.get(path.toImmutable());
+                Key key = new Key(type, path.getPath());
+                found.put(path.toImmutable(), node);
+
+                // Cache first and check afterwards, like load does: a write that finished while loading
+                // either bumped the version already or will invalidate the entry once it finishes.
+                nodes.put(key, Optional.ofNullable(node).map(this::compact));
+
+                if (version.get() != before) {
+                    nodes.invalidate(key);
+                }
+            }
+        }
+
+        found.values().removeIf(node -> node == null);
+        return found;
+    }
+
+    /**
+     * Answered from cached {@link Node}s when possible, otherwise by the delegate without caching.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    @Override
+    public boolean exists(Path path, String type) {
+        Optional<CompactNode> cached = nodes.getIfPresent(new Key(type, path.getPath()));
+        return cached == null ? delegate.exists(path, type) : cached.isPresent();
+    }
+
+    @Override
+    public long countChildren(Path path, String type) {
+        Optional<List<CompactNode>> cached = children.getIfPresent(new Key(type, path.getPath()));
+        return cached == null ? delegate.countChildren(path, type) : cached.map(List::size).orElse(0);
+    }
+
+    @Override
+    public long countDescendants(Path path, String type) {
+        Optional<List<CompactNode>> cached = subtrees.getIfPresent(new Key(type, path.getPath()));
+        return cached == null ? delegate.countDescendants(path, type) : cached.map(list -> list.size() - 1).orElse(0);
+    }
+
+    @Override
+    public Optional<Iterable<Node>> getChildrenByPath(Path path, String type) {
+        return load(children, new Key(type, path.getPath()), () -> toList(delegate.getChildrenByPath(path, type)))
+                .map(this::toNodes);
+    }
+
+    /**
+     * Pages are not cached, they are meant for groups too large to keep around in full.
+     *
+     * @param path
+     * @param type
+     * @param pageSize
+     * @param token
+     * @return
+     */
+    @Override
+    public Optional<NodePage> getChildrenByPath(Path path, String type, int pageSize, String token) {
+        return delegate.getChildrenByPath(path, type, pageSize, token);
+    }
+
+    @Override
+    public Optional<Iterable<Node>> getAllByPath(Path path, String type) {
+        return load(subtrees, new Key(type, path.getPath()), () -> toList(delegate.getAllByPath(path, type)))
+                .map(this::toNodes);
+    }
+
+    @Override
+    public void save(Node node) {
+        try {
+            delegate.save(node);
+        } finally {
+            version.incrementAndGet();
+            invalidateSaved(node);
+        }
+    }
+
+    @Override
+    public void saveAll(Iterable<Node> nodes) {
+        List<Node> saved = newArrayList(nodes);
+
+        try {
+            delegate.saveAll(saved);
+        } finally {
+            version.incrementAndGet();
+            saved.forEach(this::invalidateSaved);
+        }
+    }
+
+    @Override
+    public void deleteByPath(Path path, String type) {
+        try {
+            delegate.deleteByPath(path, type);
+        } finally {
+            invalidateDeleted(type, path.getPath());
+        }
+    }
+
+    @Override
+    public void move(Path from, Path to, String type) {
+        try {
+            delegate.move(from, to, type);
+        } finally {
+            invalidateDeleted(type, from.getPath());
+            invalidateDeleted(type, to.getPath());
+        }
+    }
+
+    @Override
+    public void copy(Path from, Path to, String type, Map<String, String> values) {
+        try {
+            delegate.copy(from, to, type, values);
+        } finally {
+            invalidateDeleted(type, to.getPath());
+        }
+    }
+
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type) {
+        return deleteAndInvalidate(path, type, () -> delegate.deleteAndReturnByPath(path, type));
+    }
+
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type, Runnable beforeCommit) {
+        return deleteAndInvalidate(path, type, () -> delegate.deleteAndReturnByPath(path, type, beforeCommit));
+    }
+
+    /**
+     * Hit, miss and eviction counts summed over the {@link Node}, child list and subtree caches.
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return nodes.stats()
+                .plus(children.stats())
+                .plus(subtrees.stats());
+    }
+
+    /**
+     * Drop every cached entry, e.g. after the underlying index was changed by someone else.
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        nodes.invalidateAll();
+        children.invalidateAll();
+        subtrees.invalidateAll();
+    }
+
+    private Optional<Stream<Node>> deleteAndInvalidate(Path path, String type, Supplier<Optional<Stream<Node>>> delete) {
+        String deleted = path.getPath();
+        Optional<Stream<Node>> nodes;
+
+        try {
+            nodes = delete.get();
+        } finally {
+            invalidateDeleted(type, deleted);
+        }
+
+        // the delegate may only commit the delete once the stream is consumed, so anything cached
+        // while it was open is dropped again
+        return nodes.map(stream -> stream.onClose(() -> invalidateDeleted(type, deleted)));
+    }
+
+    private void invalidateSaved(Node node) {
+        Key key = new Key(node.getType(), node.getPath());
+
+        nodes.invalidate(key);
+        children.invalidate(key);
+        subtrees.invalidate(key);
+        invalidateAncestors(node.getType(), node.getPath());
+    }
+
+    private void invalidateDeleted(String type, String deleted) {
+        version.incrementAndGet();
+
+        nodes.asMap().keySet().removeIf(key -> key.isSubtreeOf(type, deleted));
+        children.asMap().keySet().removeIf(key -> key.isSubtreeOf(type, deleted));
+        subtrees.asMap().keySet().removeIf(key -> key.isSubtreeOf(type, deleted));
+        invalidateAncestors(type, deleted);
+    }
+
+    private void invalidateAncestors(String type, String path) {
+        if (path.equals(ROOT)) {
+            return;
+        }
+
+        String parent = parentOf(path);
+        children.invalidate(new Key(type, parent));
+
+        while (true) {
+            subtrees.invalidate(new Key(type, parent));
+
+            if (parent.equals(ROOT)) {
+                break;
+            }
+            parent = parentOf(parent);
+        }
+    }
+
+    private <V> V load(Cache<Key, V> cache, Key key, Callable<V> loader) {
+        long before = version.get();
+
+        try {
+            V value = cache.get(key, loader);
+
+            // A write finished while loading, the loaded value may predate it.
+            if (version.get() != before) {
+                cache.invalidate(key);
+            }
+
+            return value;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Cache<Key, Optional<List<CompactNode>>> newListCache(long maximumSize, long expireAfterWriteMillis) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher((Key key, Optional<List<CompactNode>> value) -> 1 + value.map(List::size).orElse(0))
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    private CompactNode compact(Node node) {
+        return CompactNode.of(node, types, parents);
+    }
+
+    private Optional<List<CompactNode>> toList(Optional<Iterable<Node>> nodes) {
+        return nodes.map(list -> ImmutableList.copyOf(CompactNode.compactAll(list, types, parents)));
+    }
+
+    private Iterable<Node> toNodes(List<CompactNode> nodes) {
+        List<Node> expanded = newArrayList();
+        nodes.forEach(compact -> expanded.add(compact.toNode(types)));
+        return expanded;
+    }
+
+    public static CachingTreeMeIndexBuilder builder() {
+        return new CachingTreeMeIndexBuilder();
+    }
+
+    private static final class Key {
+        private final String type;
+        private final String path;
+
+        private Key(String type, String path) {
+            this.type = type;
+            this.path = path;
+        }
+
+        private boolean isSubtreeOf(String type, String path) {
+            return this.type.equals(type) && Path.isSubtreeOf(path, this.path);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equal(type, key.type) &&
+                    Objects.equal(path, key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(type, path);
+        }
+    }
+
+    public static class CachingTreeMeIndexBuilder {
+        private TreeMeIndex delegate;
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private long expireAfterWriteMillis = DEFAULT_EXPIRE_AFTER_WRITE_MILLIS;
+
+        public CachingTreeMeIndexBuilder() {
+        }
+
+        public CachingTreeMeIndexBuilder delegate(TreeMeIndex delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public CachingTreeMeIndexBuilder maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public CachingTreeMeIndexBuilder expireAfterWriteMillis(long expireAfterWriteMillis) {
+            this.expireAfterWriteMillis = expireAfterWriteMillis;
+            return this;
+        }
+
+        public CachingTreeMeIndex build() {
+            return new CachingTreeMeIndex(delegate, maximumSize, expireAfterWriteMillis);
+        }
+    }
+}
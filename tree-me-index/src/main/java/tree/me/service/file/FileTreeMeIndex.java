@@ -0,0 +1,958 @@
+package tree.me.service.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tree.me.core.index.ImmutablePath;
+import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
+import tree.me.core.index.Path;
+import tree.me.service.NodeKey;
+import tree.me.service.TreeMeIndex;
+import tree.me.service.exception.TreeMeDeleteException;
+import tree.me.service.exception.TreeMeSaveException;
+import tree.me.service.file.NodeRecords.Record;
+import tree.me.service.file.Snapshots.Checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Comparator.comparingInt;
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.ofNullable;
+import static tree.me.core.index.NodePage.checkPageSize;
+import static tree.me.core.index.NodePage.decodeToken;
+import static tree.me.core.index.Path.DELIM;
+import static tree.me.core.index.Path.descendantPrefix;
+import static tree.me.core.index.Path.isSubtreeOf;
+import static tree.me.core.index.Path.rebase;
+import static tree.me.core.index.Path.successor;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCopy;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCreate;
+import static tree.me.service.TreeMeIndexRules.checkBeforeMove;
+import static tree.me.service.TreeMeIndexRules.checkBeforeUpdate;
+import static tree.me.service.file.NodeRecords.BATCH;
+import static tree.me.service.file.NodeRecords.DELETE;
+import static tree.me.service.file.NodeRecords.MOVE;
+import static tree.me.service.file.NodeRecords.PUT;
+import static tree.me.service.file.SegmentLog.location;
+import static tree.me.service.file.SegmentLog.offsetOf;
+import static tree.me.service.file.SegmentLog.segmentOf;
+
+/**
+ * {@link TreeMeIndex} stored in a directory, without a database. Every save and delete is appended as
+ * one checksummed record to a log of memory mapped segment files, and a sorted in-memory index maps
+ * each type and path to where its latest record lives. Lookups decode {@link Node}s from the mapping,
+ * copying their strings onto the heap, which otherwise only holds the keys and one location per {@link Node}.
+ * <p>
+ * Batch saves, moves and copies are a single record each and cascading deletes store just the deleted
+ * {@link Path}, so all of them are all or nothing across crashes. Records cut short by a crash are dropped when the log is recovered.
+ * Unless {@code syncOnWrite} is set, records reach the disk when the OS flushes the mapping, when a
+ * segment fills up and on {@link #close()}.
+ * <p>
+ * A maintenance thread periodically snapshots the in-memory index, so startup only loads the snapshot and
+ * replays the log written after it, and compacts the log once most of it is overwritten or deleted
+ * records. Compaction copies live records into new segments in small steps, so writers only wait for one
+ * step at a time and readers are never blocked. Compacted segments are unmapped and deleted once the reads
+ * that started before they were retired have finished, freeing their disk space right away.
+ * <p>
+ * Writes are serialized; reads run concurrently and without locks, retrying under a read lock only when
+ * a batch, move, copy or cascading delete was applied while they ran.
+ */
+public class FileTreeMeIndex implements TreeMeIndex, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileTreeMeIndex.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_MAINTENANCE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String LOCK_FILE = "index.lock";
+    private static final int COMPACTION_STEP = 1000;
+    private static final long MIN_COMPACTION_GARBAGE = 10000;
+
+    private final File directory;
+    private final boolean syncOnWrite;
+    private final SegmentLog log;
+    private final FileLock directoryLock;
+    private final ScheduledExecutorService maintenance;
+
+    private final ConcurrentNavigableMap<NodeKey, Long> index = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, String> types = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final ReentrantLock writer = new ReentrantLock();
+
+    // Reads register under the current epoch, so compaction can wait for the reads that may still be
+    // holding locations in the segments it retired.
+    private final AtomicInteger[] readers = {new AtomicInteger(), new AtomicInteger()};
+    private volatile int epoch;
+
+    // Estimated number of entries in the log, live or not. Compared to the index size to decide when to compact.
+    private volatile long appended;
+    private long snapshotLocation = -1;
+    private boolean closed;
+
+    public FileTreeMeIndex(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, false, DEFAULT_MAINTENANCE_INTERVAL_MILLIS);
+    }
+
+    public FileTreeMeIndex(File directory, int segmentSize, boolean syncOnWrite, long maintenanceIntervalMillis) throws IOException {
+        requireNonNull(directory);
+
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes.");
+        }
+
+        if (maintenanceIntervalMillis < 0) {
+            throw new IllegalArgumentException("Maintenance interval must not be negative.");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create index directory " + directory + ".");
+        }
+
+        this.directory = directory;
+        this.syncOnWrite = syncOnWrite;
+        this.directoryLock = lockDirectory(directory);
+
+        try {
+            this.log = SegmentLog.open(directory, segmentSize);
+            load();
+        } catch (IOException | RuntimeException e) {
+            directoryLock.channel().close();
+            throw e;
+        }
+
+        if (maintenanceIntervalMillis > 0) {
+            maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tree-me-file-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintenance.scheduleWithFixedDelay(this::maintain, maintenanceIntervalMillis, maintenanceIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            maintenance = null;
+        }
+    }
+
+    @Override
+    public Optional<Node> getByPath(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            Long location = index.get(key);
+            return location == null ? null : readNode(location);
+        }));
+    }
+
+    @Override
+    public Map<ImmutablePath, Node> getByPaths(Collection<Path> paths, String type) {
+        return read(() -> {
+            Map<ImmutablePath, Node> found = newLinkedHashMap();
+
+            for (Path path : paths) {
+                Long location = index.get(new NodeKey(type, path.getPath()));
+
+                if (location != null) {
+                    found.put(path.toImmutable(), readNode(location));
+                }
+            }
+
+            return found;
+        });
+    }
+
+    @Override
+    public boolean exists(Path path, String type) {
+        return index.containsKey(new NodeKey(type, path.getPath()));
+    }
+
+    @Override
+    public long countChildren(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return read(() -> {
+            long[] count = {0};
+            forEachChild(key, key, (child, location) -> {
+                count[0]++;
+                return true;
+            });
+            return count[0];
+        });
+    }
+
+    @Override
+    public long countDescendants(Path path, String type) {
+        String prefix = descendantPrefix(path.getPath());
+        return read(() -> (long) index.subMap(new NodeKey(type, prefix), false, new NodeKey(type, successor(prefix)), false).size());
+    }
+
+    @Override
+    public Optional<Iterable<Node>> getChildrenByPath(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            if (!index.containsKey(key)) {
+                return null;
+            }
+
+            List<Node> children = newArrayList();
+            forEachChild(key, key, (child, location) -> children.add(readNode(location)));
+            return children;
+        }));
+    }
+
+    @Override
+    public Optional<NodePage> getChildrenByPath(Path path, String type, int pageSize, String token) {
+        checkPageSize(pageSize);
+        String after = decodeToken(token);
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            if (!index.containsKey(key)) {
+                return null;
+            }
+
+            List<Node> children = newArrayList();
+            NodeKey start = after.isEmpty() ? key : new NodeKey(type, after);
+            forEachChild(key, start, (child, location) -> {
+                children.add(readNode(location));
+                return children.size() <= pageSize;
+            });
+            return NodePage.of(children, pageSize);
+        }));
+    }
+
+    @Override
+    public Optional<Iterable<Node>> getAllByPath(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            if (!index.containsKey(key)) {
+                return null;
+            }
+
+            List<Node> nodes = newArrayList();
+            subtree(key).forEach((candidate, location) -> {
+                if (isSubtreeOf(key.getPath(), candidate.getPath())) {
+                    nodes.add(readNode(location));
+                }
+            });
+            return nodes;
+        }));
+    }
+
+    @Override
+    public void save(Node node) {
+        requireNonNull(node);
+
+        writer.lock();
+        try {
+            checkOpen();
+
+            NodeKey key = new NodeKey(intern(node.getType()), node.getPath());
+            Node previous = get(key);
+
+            if (previous != null) {
+                checkBeforeUpdate(previous, node);
+            } else {
+                checkBeforeCreate(node, ofNullable(parentOf(node, this::get)));
+            }
+
+            Record record = NodeRecords.put(node);
+            long location = append(record, 1);
+
+            long stamp = lock.writeLock();
+            try {
+                index.put(key, location + record.nodeOffsets[0]);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to save node.", e);
+            throw new TreeMeSaveException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(Iterable<Node> nodes) {
+        List<Node> sorted = newArrayList(nodes);
+
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        // Parents always have shorter paths than their children, so they get validated first.
+        sorted.sort(comparingInt(node -> node.getPath().length()));
+
+        writer.lock();
+        try {
+            checkOpen();
+
+            Map<NodeKey, Node> staged = newLinkedHashMap();
+
+            for (Node node : sorted) {
+                NodeKey key = new NodeKey(intern(node.getType()), node.getPath());
+                Node previous = staged.containsKey(key) ? staged.get(key) : get(key);
+
+                if (previous != null) {
+                    checkBeforeUpdate(previous, node);
+                } else {
+                    Node parent = parentOf(node, parentKey -> staged.containsKey(parentKey) ? staged.get(parentKey) : get(parentKey));
+                    checkBeforeCreate(node, ofNullable(parent));
+                }
+
+                staged.put(key, node);
+            }
+
+            Record record = NodeRecords.batch(newArrayList(staged.values()));
+            long location = append(record, staged.size());
+
+            long stamp = lock.writeLock();
+            try {
+                int i = 0;
+                for (NodeKey key : staged.keySet()) {
+                    index.put(key, location + record.nodeOffsets[i++]);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to save nodes.", e);
+            throw new TreeMeSaveException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    @Override
+    public void move(Path from, Path to, String type) {
+        String source = from.getPath();
+        String target = to.getPath();
+        NodeKey key = new NodeKey(intern(type), source);
+
+        writer.lock();
+        try {
+            checkOpen();
+            checkBeforeMove(source, target, ofNullable(get(key)), ofNullable(get(new NodeKey(type, target))),
+                    ofNullable(get(new NodeKey(type, Path.parentOf(target)))));
+
+            List<Node> moved = newArrayList();
+            for (Node node : readSubtree(key)) {
+                moved.add(new Node(rebase(node.getPath(), source, target), node.getType(), node.getName(),
+                        node.getLeaf(), node.getValue()));
+            }
+
+            Record record = NodeRecords.move(type, source, moved);
+            long location = append(record, moved.size() + 1);
+
+            long stamp = lock.writeLock();
+            try {
+                removeSubtree(key);
+                putAll(key.getType(), moved, record, location);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to move nodes.", e);
+            throw new TreeMeSaveException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    @Override
+    public void copy(Path from, Path to, String type, Map<String, String> values) {
+        String source = from.getPath();
+        String target = to.getPath();
+        NodeKey key = new NodeKey(intern(type), source);
+
+        writer.lock();
+        try {
+            checkOpen();
+            checkBeforeCopy(source, target, ofNullable(get(key)), ofNullable(get(new NodeKey(type, target))),
+                    ofNullable(get(new NodeKey(type, Path.parentOf(target)))));
+
+            List<Node> copies = newArrayList();
+            for (Node node : readSubtree(key)) {
+                String value = node.getLeaf() ? values.getOrDefault(node.getValue(), node.getValue()) : node.getValue();
+                copies.add(new Node(rebase(node.getPath(), source, target), type, node.getName(), node.getLeaf(), value));
+            }
+
+            Record record = NodeRecords.batch(copies);
+            long location = append(record, copies.size());
+
+            long stamp = lock.writeLock();
+            try {
+                putAll(key.getType(), copies, record, location);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to copy nodes.", e);
+            throw new TreeMeSaveException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByPath(Path path, String type) {
+        deleteSubtree(path, type, false);
+    }
+
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type) {
+        return deleteSubtree(path, type, true).map(List::stream);
+    }
+
+    /**
+     * Reads, hands out and deletes the subtree while holding the writer lock, which is only released once
+     * the stream is exhausted or closed. Nothing can change the subtree in between, but no other write gets
+     * through either, so {@code beforeCommit} must not write to this index, and the stream must be consumed
+     * and closed on the calling thread.
+     */
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type, Runnable beforeCommit) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        writer.lock();
+        AtomicBoolean locked = new AtomicBoolean(true);
+        Runnable unlock = () -> {
+            if (locked.getAndSet(false)) {
+                writer.unlock();
+            }
+        };
+
+        try {
+            checkOpen();
+
+            if (!index.containsKey(key)) {
+                unlock.run();
+                return ofNullable(null);
+            }
+
+            // only pulled from once the read nodes are exhausted
+            Stream<Node> delete = Stream.of(key).flatMap(deleted -> {
+                try {
+                    beforeCommit.run();
+                    append(NodeRecords.delete(type, deleted.getPath()), 1);
+
+                    long stamp = lock.writeLock();
+                    try {
+                        removeSubtree(deleted);
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                } catch (IOException e) {
+                    LOG.error("Failed to delete node.", e);
+                    throw new TreeMeDeleteException(e);
+                } finally {
+                    unlock.run();
+                }
+                return Stream.empty();
+            });
+
+            return ofNullable(Stream.concat(readSubtree(key).stream(), delete).onClose(unlock));
+        } catch (RuntimeException | Error e) {
+            unlock.run();
+            throw e;
+        }
+    }
+
+    private Optional<List<Node>> deleteSubtree(Path path, String type, boolean read) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        writer.lock();
+        try {
+            checkOpen();
+
+            if (!index.containsKey(key)) {
+                return ofNullable(null);
+            }
+
+            List<Node> removed = read ? readSubtree(key) : newArrayList();
+
+            append(NodeRecords.delete(type, key.getPath()), 1);
+
+            long stamp = lock.writeLock();
+            try {
+                removeSubtree(key);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            return ofNullable(removed);
+        } catch (IOException e) {
+            LOG.error("Failed to delete node.", e);
+            throw new TreeMeDeleteException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /**
+     * Number of {@link Node}s held across all types.
+     *
+     * @return
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Write a snapshot of the in-memory index, so the next startup only replays the log written after
+     * it. Writers wait while the snapshot is written.
+     *
+     * @throws IOException
+     */
+    public void snapshot() throws IOException {
+        writer.lock();
+        try {
+            checkOpen();
+            snapshotLocked();
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /**
+     * Copy every live record into new segments and delete the old ones. Runs in steps of
+     * {@value #COMPACTION_STEP} {@link Node}s, so writers are only held up for one step at a time.
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        int boundary;
+
+        writer.lock();
+        try {
+            checkOpen();
+            log.roll(0);
+            boundary = log.getActiveId();
+        } finally {
+            writer.unlock();
+        }
+
+        LOG.info("Compacting segments before {} in {}.", boundary, directory);
+        Iterator<Map.Entry<NodeKey, Long>> entries = index.entrySet().iterator();
+
+        while (entries.hasNext()) {
+            writer.lock();
+            try {
+                checkOpen();
+
+                for (int i = 0; i < COMPACTION_STEP && entries.hasNext(); i++) {
+                    NodeKey key = entries.next().getKey();
+                    Long location = index.get(key);
+
+                    // Nodes written since compaction started already live in the new segments.
+                    if (location != null && segmentOf(location) < boundary) {
+                        Record record = NodeRecords.put(readNode(location));
+                        // The moved record holds the same Node, readers may see either location.
+                        index.replace(key, location, append(record, 1) + record.nodeOffsets[0]);
+                    }
+                }
+            } finally {
+                writer.unlock();
+            }
+        }
+
+        writer.lock();
+        try {
+            checkOpen();
+            // Only drop the old segments once a snapshot no longer points into them.
+            snapshotLocked();
+
+            List<Segment> retired;
+            long stamp = lock.writeLock();
+            try {
+                retired = log.retire(boundary);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            awaitReaders();
+            retired.forEach(Segment::delete);
+            appended = index.size();
+            LOG.info("Compacted {} segments in {}.", retired.size(), directory);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /**
+     * Stop maintenance, snapshot the index and flush the log to disk.
+     */
+    @Override
+    public void close() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
+
+        writer.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            try {
+                snapshotLocked();
+            } catch (IOException e) {
+                LOG.warn("Failed to snapshot {} on close, the next start replays the log.", directory, e);
+            }
+
+            log.close();
+            directoryLock.channel().close();
+        } catch (IOException e) {
+            LOG.warn("Failed to release lock on {}.", directory, e);
+        } finally {
+            closed = true;
+            writer.unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        Checkpoint checkpoint = Snapshots.read(directory, (type, path, location) -> {
+            index.put(new NodeKey(intern(type), path), location);
+            return log.contains(segmentOf(location));
+        });
+
+        if (checkpoint == null) {
+            index.clear();
+        }
+
+        long replayed = 0;
+
+        for (Segment segment : log.getSegments()) {
+            // segments before the checkpoint are fully covered by the snapshot
+            if (checkpoint == null || segment.getId() > segmentOf(checkpoint.location)) {
+                replayed += replay(segment, 0);
+            } else if (segment.getId() == segmentOf(checkpoint.location)) {
+                replayed += replay(segment, offsetOf(checkpoint.location));
+            }
+        }
+
+        log.activate();
+        appended = (checkpoint == null ? 0 : checkpoint.appended) + replayed;
+        snapshotLocation = checkpoint == null ? -1 : checkpoint.location;
+
+        LOG.info("Loaded {} nodes from {}, replayed {} log entries.", index.size(), directory, replayed);
+    }
+
+    private long replay(Segment segment, int from) {
+        long[] replayed = {0};
+
+        segment.recover(from, (offset, body) -> {
+            byte op = body.get();
+
+            if (op == PUT) {
+                replayNode(segment, body);
+                replayed[0]++;
+            } else if (op == BATCH) {
+                int count = body.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    replayNode(segment, body);
+                }
+                replayed[0] += count;
+            } else if (op == DELETE) {
+                String type = NodeRecords.readString(body);
+                String path = NodeRecords.readString(body);
+
+                removeSubtree(new NodeKey(type, path));
+                replayed[0]++;
+            } else if (op == MOVE) {
+                String type = NodeRecords.readString(body);
+                String path = NodeRecords.readString(body);
+
+                removeSubtree(new NodeKey(type, path));
+                int count = body.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    replayNode(segment, body);
+                }
+                replayed[0] += count + 1;
+            } else {
+                throw new IllegalStateException("Unknown record type " + op + " in segment " + segment.getId() + ".");
+            }
+        });
+
+        return replayed[0];
+    }
+
+    private void replayNode(Segment segment, ByteBuffer body) {
+        long location = location(segment.getId(), body.position());
+        String[] key = NodeRecords.readKey(body);
+
+        index.put(new NodeKey(intern(key[0]), key[1]), location);
+    }
+
+    private long append(Record record, int entries) throws IOException {
+        long location = log.append(record);
+
+        if (syncOnWrite) {
+            log.force();
+        }
+
+        appended += entries;
+        return location;
+    }
+
+    private void snapshotLocked() throws IOException {
+        long location = log.getActiveLocation();
+
+        if (location == snapshotLocation) {
+            return;
+        }
+
+        log.force();
+        Snapshots.write(directory, location, appended, index);
+        snapshotLocation = location;
+    }
+
+    private void maintain() {
+        try {
+            long live = index.size();
+            long garbage = appended - live;
+
+            if (garbage > Math.max(live, MIN_COMPACTION_GARBAGE)) {
+                compact();
+            } else {
+                snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Maintenance of {} failed.", directory, e);
+        }
+    }
+
+    /**
+     * Visit the direct children of the parent that sort after the start key, until the action returns false.
+     * Runs of deeper descendants are skipped with one seek each.
+     */
+    private void forEachChild(NodeKey parent, NodeKey start, BiPredicate<NodeKey, Long> action) {
+        String prefix = descendantPrefix(parent.getPath());
+        NodeKey end = parent.subtreeEnd();
+        Map.Entry<NodeKey, Long> entry = index.higherEntry(start);
+
+        while (entry != null && entry.getKey().compareTo(end) < 0) {
+            String candidate = entry.getKey().getPath();
+
+            if (!candidate.startsWith(prefix)) {
+                // sibling sharing the parent's path as a prefix, such as "a\u0000" for "a"
+                entry = index.higherEntry(entry.getKey());
+            } else if (candidate.indexOf(DELIM, prefix.length()) < 0) {
+                if (!action.test(entry.getKey(), entry.getValue())) {
+                    return;
+                }
+                entry = index.higherEntry(entry.getKey());
+            } else {
+                String child = candidate.substring(0, candidate.indexOf(DELIM, prefix.length()));
+                entry = index.ceilingEntry(new NodeKey(parent.getType(), child).subtreeEnd());
+            }
+        }
+    }
+
+    private ConcurrentNavigableMap<NodeKey, Long> subtree(NodeKey key) {
+        return index.subMap(key, true, key.subtreeEnd(), false);
+    }
+
+    /**
+     * Every {@link Node} in the subtree. Only call while holding the writer; segments are only retired
+     * while holding it, so the records can still be read.
+     */
+    private List<Node> readSubtree(NodeKey key) {
+        List<Node> nodes = newArrayList();
+        subtree(key).forEach((candidate, location) -> {
+            if (isSubtreeOf(key.getPath(), candidate.getPath())) {
+                nodes.add(readNode(location));
+            }
+        });
+        return nodes;
+    }
+
+    /**
+     * Point the index at the {@link Node}s of an appended record. Only call while holding the write lock.
+     */
+    private void putAll(String type, List<Node> nodes, Record record, long location) {
+        for (int i = 0; i < nodes.size(); i++) {
+            index.put(new NodeKey(type, nodes.get(i).getPath()), location + record.nodeOffsets[i]);
+        }
+    }
+
+    private void removeSubtree(NodeKey key) {
+        subtree(key).keySet().removeIf(candidate -> isSubtreeOf(key.getPath(), candidate.getPath()));
+    }
+
+    private Node get(NodeKey key) {
+        Long location = index.get(key);
+        return location == null ? null : readNode(location);
+    }
+
+    private Node readNode(long location) {
+        return NodeRecords.readNode(log.at(location));
+    }
+
+    private static Node parentOf(Node node, Function<NodeKey, Node> lookup) {
+        String path = node.getPath();
+        return path.equals(Path.ROOT) ? null : lookup.apply(new NodeKey(node.getType(), Path.parentOf(path)));
+    }
+
+    private String intern(String type) {
+        return types.computeIfAbsent(type, t -> t);
+    }
+
+    private <R> R read(Supplier<R> reader) {
+        int registered = enterRead();
+
+        try {
+            return readValidated(reader);
+        } finally {
+            readers[registered & 1].decrementAndGet();
+        }
+    }
+
+    private int enterRead() {
+        while (true) {
+            int current = epoch;
+            readers[current & 1].incrementAndGet();
+
+            // a read that raced an epoch change registers again under the new one
+            if (epoch == current) {
+                return current;
+            }
+
+            readers[current & 1].decrementAndGet();
+        }
+    }
+
+    /**
+     * Wait for every read that started before this call. Reads starting after it only see locations in
+     * segments still being served. Only call while holding the writer.
+     */
+    private void awaitReaders() {
+        int previous = epoch;
+        epoch = previous + 1;
+
+        while (readers[previous & 1].get() != 0) {
+            Thread.yield();
+        }
+    }
+
+    private <R> R readValidated(Supplier<R> reader) {
+        long stamp = lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            try {
+                R result = reader.get();
+
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A concurrent compaction may have retired a segment mid read.
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Index " + directory + " is closed.");
+        }
+    }
+
+    private static FileLock lockDirectory(File directory) throws IOException {
+        FileChannel channel = new RandomAccessFile(new File(directory, LOCK_FILE), "rw").getChannel();
+        FileLock fileLock;
+
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by another index in this JVM
+            fileLock = null;
+        }
+
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException("Index directory " + directory + " is already in use.");
+        }
+
+        return fileLock;
+    }
+
+    public static FileTreeMeIndexBuilder builder() {
+        return new FileTreeMeIndexBuilder();
+    }
+
+    public static class FileTreeMeIndexBuilder {
+        private File directory;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private boolean syncOnWrite;
+        private long maintenanceIntervalMillis = DEFAULT_MAINTENANCE_INTERVAL_MILLIS;
+
+        public FileTreeMeIndexBuilder() {
+        }
+
+        public FileTreeMeIndexBuilder directory(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public FileTreeMeIndexBuilder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public FileTreeMeIndexBuilder syncOnWrite(boolean syncOnWrite) {
+            this.syncOnWrite = syncOnWrite;
+            return this;
+        }
+
+        public FileTreeMeIndexBuilder maintenanceIntervalMillis(long maintenanceIntervalMillis) {
+            this.maintenanceIntervalMillis = maintenanceIntervalMillis;
+            return this;
+        }
+
+        public FileTreeMeIndex build() throws IOException {
+            return new FileTreeMeIndex(directory, segmentSize, syncOnWrite, maintenanceIntervalMillis);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package tree.me.service.file;
+
+import tree.me.core.index.Node;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of the records appended to a {@link Segment}. Every record is a header of the body
+ * length and the CRC32 of the body, followed by the body: an operation byte and its payload.
+ * <pre>
+ * PUT    := node
+ * BATCH  := count:int node*
+ * DELETE := type:str path:str
+ * MOVE   := type:str path:str count:int node*
+ * node   := leaf:byte type:str path:str name:str value:str
+ * str    := length:int utf8-bytes (length -1 for null)
+ * </pre>
+ * A length of zero marks the end of the written part of a segment.
+ */
+final class NodeRecords {
+
+    static final byte PUT = 1;
+    static final byte BATCH = 2;
+    static final byte DELETE = 3;
+    // deletes the subtree at the path, then puts the nodes, e.g. the subtree under its new path
+    static final byte MOVE = 4;
+
+    static final int HEADER_SIZE = 8;
+
+    private NodeRecords() {
+    }
+
+    static Record put(Node node) {
+        RecordBuilder builder = new RecordBuilder(PUT, 1);
+        builder.node(node);
+        return builder.build();
+    }
+
+    static Record batch(List<Node> nodes) {
+        RecordBuilder builder = new RecordBuilder(BATCH, nodes.size());
+        builder.integer(nodes.size());
+        nodes.forEach(builder::node);
+        return builder.build();
+    }
+
+    static Record delete(String type, String path) {
+        RecordBuilder builder = new RecordBuilder(DELETE, 0);
+        builder.string(type);
+        builder.string(path);
+        return builder.build();
+    }
+
+    static Record move(String type, String path, List<Node> nodes) {
+        RecordBuilder builder = new RecordBuilder(MOVE, nodes.size());
+        builder.string(type);
+        builder.string(path);
+        builder.integer(nodes.size());
+        nodes.forEach(builder::node);
+        return builder.build();
+    }
+
+    /**
+     * Decode the {@link Node} starting at the buffer's position, leaving the position after it.
+     *
+     * @param buffer
+     * @return
+     */
+    static Node readNode(ByteBuffer buffer) {
+        boolean leaf = buffer.get() != 0;
+        String type = readString(buffer);
+        String path = readString(buffer);
+        String name = readString(buffer);
+        String value = readString(buffer);
+
+        return new Node(path, type, name, leaf, value);
+    }
+
+    /**
+     * Skip the {@link Node} starting at the buffer's position, returning its type and path.
+     *
+     * @param buffer
+     * @return
+     */
+    static String[] readKey(ByteBuffer buffer) {
+        buffer.get();
+        String type = readString(buffer);
+        String path = readString(buffer);
+        skipString(buffer);
+        skipString(buffer);
+
+        return new String[]{type, path};
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + Math.max(length, 0));
+    }
+
+    static int crc(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * An encoded record, ready to be appended, and the offsets of the {@link Node}s within it.
+     */
+    static final class Record {
+        final byte[] bytes;
+        final int[] nodeOffsets;
+
+        private Record(byte[] bytes, int[] nodeOffsets) {
+            this.bytes = bytes;
+            this.nodeOffsets = nodeOffsets;
+        }
+    }
+
+    private static final class RecordBuilder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final int[] nodeOffsets;
+        private int nodes;
+
+        private RecordBuilder(byte op, int nodeCount) {
+            this.nodeOffsets = new int[nodeCount];
+
+            try {
+                // placeholder for the header, filled in by build()
+                out.writeLong(0);
+                out.writeByte(op);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void integer(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void node(Node node) {
+            nodeOffsets[nodes++] = out.size();
+
+            try {
+                out.writeByte(node.getLeaf() ? 1 : 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            string(node.getType());
+            string(node.getPath());
+            string(node.getName());
+            string(node.getValue());
+        }
+
+        private void string(String value) {
+            try {
+                if (value == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Record build() {
+            byte[] record = bytes.toByteArray();
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            int length = record.length - HEADER_SIZE;
+
+            buffer.putInt(0, length);
+            buffer.putInt(4, crc(ByteBuffer.wrap(record, HEADER_SIZE, length)));
+
+            return new Record(record, nodeOffsets);
+        }
+    }
+}
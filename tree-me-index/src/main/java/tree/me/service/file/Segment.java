@@ -0,0 +1,186 @@
+package tree.me.service.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static tree.me.service.file.NodeRecords.HEADER_SIZE;
+import static tree.me.service.file.NodeRecords.crc;
+
+/**
+ * One append-only log file, memory mapped in full. Records are written into and read from the mapping,
+ * and the unwritten tail of the file stays zero.
+ */
+final class Segment {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Segment.class);
+
+    private static final String SUFFIX = ".segment";
+
+    private final int id;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    // only written by the single writer, read by readers through the locations it publishes
+    private volatile int position;
+
+    private Segment(int id, File file, MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    static Segment open(File directory, int id, int capacity) throws IOException {
+        File file = new File(directory, String.format("%010d%s", id, SUFFIX));
+
+        // the mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long size = Math.max(channel.size(), capacity);
+
+            return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    static boolean isSegment(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    static int idOf(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    int getId() {
+        return id;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    int remaining() {
+        return buffer.capacity() - position;
+    }
+
+    /**
+     * Copy the record to the end of the written part, returning the offset it was written at.
+     *
+     * @param record
+     * @return
+     */
+    int append(byte[] record) {
+        int offset = position;
+        ByteBuffer target = buffer.duplicate();
+
+        target.position(offset);
+        target.put(record);
+        position = offset + record.length;
+
+        return offset;
+    }
+
+    /**
+     * Independent view of the mapping for reading.
+     *
+     * @return
+     */
+    ByteBuffer reader() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Visit every intact record from the offset on and continue appending after the last one. A record
+     * cut short by a crash fails its CRC check; it and anything after it is zeroed out.
+     *
+     * @param from
+     * @param visitor
+     */
+    void recover(int from, RecordVisitor visitor) {
+        int offset = from;
+
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+
+            ByteBuffer body = buffer.duplicate();
+            body.position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + length);
+
+            if (crc(body.slice()) != buffer.getInt(offset + 4)) {
+                LOG.warn("Found torn record in segment {} at offset {}, discarding the rest of the segment.", id, offset);
+                break;
+            }
+
+            visitor.visit(offset, body);
+            offset += HEADER_SIZE + length;
+        }
+
+        if (offset + 4 <= buffer.capacity() && buffer.getInt(offset) != 0) {
+            for (int i = offset; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        position = offset;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Unmap and remove the file. Any view still read afterwards crashes the JVM, so only call once no reader
+     * can reach the segment anymore. Where the mapping can't be released explicitly it stays until it is
+     * garbage collected, and so does the disk space of the deleted file.
+     */
+    void delete() {
+        unmap(buffer);
+
+        if (!file.delete()) {
+            LOG.warn("Failed to delete segment file {}.", file);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            try {
+                // Java 8
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object clean = cleaner.invoke(buffer);
+                clean.getClass().getMethod("clean").invoke(clean);
+            } catch (ReflectiveOperationException | RuntimeException unavailable) {
+                LOG.debug("Unable to unmap segment, leaving it to the garbage collector.", unavailable);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Unable to unmap segment, leaving it to the garbage collector.", e);
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        /**
+         * @param offset of the record header
+         * @param body   positioned at the operation byte, limited to the end of the record
+         */
+        void visit(int offset, ByteBuffer body);
+    }
+}
@@ -0,0 +1,159 @@
+package tree.me.service.file;
+
+import tree.me.service.file.NodeRecords.Record;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Ordered {@link Segment}s of a {@link FileTreeMeIndex}. Only the newest segment is appended to; once it
+ * can't fit the next record a new one is started. Locations handed out pack the segment id into the
+ * upper and the offset into the lower 32 bits of a long.
+ */
+final class SegmentLog {
+
+    private final File directory;
+    private final int segmentSize;
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private Segment active;
+
+    private SegmentLog(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    static SegmentLog open(File directory, int segmentSize) throws IOException {
+        SegmentLog log = new SegmentLog(directory, segmentSize);
+        File[] files = directory.listFiles(Segment::isSegment);
+
+        if (files != null) {
+            for (File file : files) {
+                int id = Segment.idOf(file);
+                log.segments.put(id, Segment.open(directory, id, segmentSize));
+            }
+        }
+
+        return log;
+    }
+
+    static long location(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    Collection<Segment> getSegments() {
+        return segments.values();
+    }
+
+    boolean contains(int segment) {
+        return segments.containsKey(segment);
+    }
+
+    /**
+     * Start appending to the newest segment, creating the first one for an empty directory. Called once
+     * all segments have been recovered.
+     *
+     * @throws IOException
+     */
+    void activate() throws IOException {
+        if (segments.isEmpty()) {
+            Segment first = Segment.open(directory, 0, segmentSize);
+            segments.put(first.getId(), first);
+        }
+
+        active = segments.lastEntry().getValue();
+    }
+
+    int getActiveId() {
+        return active.getId();
+    }
+
+    long getActiveLocation() {
+        return location(active.getId(), active.getPosition());
+    }
+
+    /**
+     * Append the record, returning the location of its header.
+     *
+     * @param record
+     * @return
+     * @throws IOException
+     */
+    long append(Record record) throws IOException {
+        if (active.remaining() < record.bytes.length) {
+            roll(record.bytes.length);
+        }
+
+        return location(active.getId(), active.append(record.bytes));
+    }
+
+    /**
+     * Start a new segment large enough for at least the given number of bytes.
+     *
+     * @param minimumSize
+     * @throws IOException
+     */
+    void roll(int minimumSize) throws IOException {
+        active.force();
+
+        Segment next = Segment.open(directory, active.getId() + 1, Math.max(segmentSize, minimumSize));
+        segments.put(next.getId(), next);
+        active = next;
+    }
+
+    /**
+     * View of the mapping positioned at the location.
+     *
+     * @param location
+     * @return
+     */
+    ByteBuffer at(long location) {
+        Segment segment = segments.get(segmentOf(location));
+
+        if (segment == null) {
+            throw new IllegalStateException("Segment " + segmentOf(location) + " was already compacted.");
+        }
+
+        ByteBuffer buffer = segment.reader();
+        buffer.position(offsetOf(location));
+        return buffer;
+    }
+
+    void force() {
+        active.force();
+    }
+
+    /**
+     * Stop serving every segment older than the given one. The caller deletes them once no reader can
+     * pick up their locations anymore.
+     *
+     * @param segment
+     * @return
+     */
+    List<Segment> retire(int segment) {
+        ConcurrentNavigableMap<Integer, Segment> older = segments.headMap(segment, false);
+        List<Segment> retired = newArrayList(older.values());
+
+        older.clear();
+        return retired;
+    }
+
+    void close() {
+        segments.values().forEach(Segment::force);
+    }
+}
@@ -0,0 +1,152 @@
+package tree.me.service.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tree.me.service.NodeKey;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot of the path index of a {@link FileTreeMeIndex}: every key with the location of its latest
+ * record, plus the log location up to which it is complete. Startup loads the snapshot and only
+ * replays the log from there on. Snapshots are written next to the old one and renamed over it, and
+ * carry a CRC32 so a damaged snapshot is ignored rather than trusted.
+ */
+final class Snapshots {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Snapshots.class);
+
+    private static final String FILE = "index.snapshot";
+    private static final String TEMP_FILE = "index.snapshot.tmp";
+    private static final int MAGIC = 0x54524545;
+    private static final int VERSION = 1;
+    private static final int MAX_STRING_BYTES = 1 << 24;
+
+    private Snapshots() {
+    }
+
+    static void write(File directory, long checkpoint, long appended, Map<NodeKey, Long> index) throws IOException {
+        File temp = new File(directory, TEMP_FILE);
+        CRC32 crc = new CRC32();
+
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(file, 1 << 16);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checkpoint);
+            out.writeLong(appended);
+            out.writeLong(index.size());
+
+            for (Map.Entry<NodeKey, Long> entry : index.entrySet()) {
+                writeString(out, entry.getKey().getType());
+                writeString(out, entry.getKey().getPath());
+                out.writeLong(entry.getValue());
+            }
+
+            out.flush();
+            new DataOutputStream(buffered).writeLong(crc.getValue());
+            buffered.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temp.toPath(), new File(directory, FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Feed every entry of the snapshot to the sink. Returns {@code null} when there is no usable
+     * snapshot; entries fed before a damaged snapshot was detected must then be discarded.
+     *
+     * @param directory
+     * @param sink
+     * @return
+     */
+    static Checkpoint read(File directory, EntrySink sink) {
+        File file = new File(directory, FILE);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+
+        try (BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc));
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warn("Ignoring snapshot {} of an unknown format.", file);
+                return null;
+            }
+
+            long checkpoint = in.readLong();
+            long appended = in.readLong();
+            long count = in.readLong();
+
+            for (long i = 0; i < count; i++) {
+                String type = readString(in);
+                String path = readString(in);
+
+                if (!sink.accept(type, path, in.readLong())) {
+                    LOG.warn("Ignoring snapshot {}, it refers to missing segments.", file);
+                    return null;
+                }
+            }
+
+            long expected = crc.getValue();
+            if (new DataInputStream(buffered).readLong() != expected) {
+                LOG.warn("Ignoring snapshot {}, its checksum does not match.", file);
+                return null;
+            }
+
+            return new Checkpoint(checkpoint, appended);
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable snapshot {}.", file, e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length " + length + ".");
+        }
+
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    static final class Checkpoint {
+        final long location;
+        final long appended;
+
+        private Checkpoint(long location, long appended) {
+            this.location = location;
+            this.appended = appended;
+        }
+    }
+
+    @FunctionalInterface
+    interface EntrySink {
+        /**
+         * @return false to reject the snapshot
+         */
+        boolean accept(String type, String path, long location);
+    }
+}
@@ -0,0 +1,423 @@
+package tree.me.service.memory;
+
+import tree.me.core.index.ImmutablePath;
+import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
+import tree.me.core.index.Path;
+import tree.me.service.NodeKey;
+import tree.me.service.TreeMeIndex;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Comparator.comparingInt;
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.ofNullable;
+import static tree.me.core.index.NodePage.checkPageSize;
+import static tree.me.core.index.NodePage.decodeToken;
+import static tree.me.core.index.Path.descendantPrefix;
+import static tree.me.core.index.Path.isSubtreeOf;
+import static tree.me.core.index.Path.rebase;
+import static tree.me.core.index.Path.successor;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCopy;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCreate;
+import static tree.me.service.TreeMeIndexRules.checkBeforeMove;
+import static tree.me.service.TreeMeIndexRules.checkBeforeUpdate;
+
+/**
+ * {@link TreeMeIndex} held entirely on the heap. {@link Node}s live in a {@link ConcurrentSkipListMap}
+ * sorted by type and encoded path, so a subtree is a single range view of the map, and every group
+ * keeps the sorted set of its direct children's paths.
+ * <p>
+ * Writes are serialized by a {@link StampedLock}, which makes a save, a batch save or a cascading
+ * delete visible all at once. Single {@link Node} lookups never touch the lock, and listings run under
+ * an optimistic read stamp, only falling back to a read lock if a write happened while they ran.
+ * <p>
+ * Stored and returned {@link Node}s are copies, so callers can't change the index by mutating them.
+ * Besides the {@link Node} itself and its strings, every entry costs a key, a skip list node with on
+ * average one index node, and one entry in its parent's child set; heap use grows linearly with the
+ * number of {@link Node}s.
+ */
+public class InMemoryTreeMeIndex implements TreeMeIndex {
+
+    private final ConcurrentNavigableMap<NodeKey, Node> nodes = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<NodeKey, NavigableSet<String>> children = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+
+    @Override
+    public Optional<Node> getByPath(Path path, String type) {
+        return ofNullable(nodes.get(new NodeKey(type, path.getPath()))).map(InMemoryTreeMeIndex::detach);
+    }
+
+    @Override
+    public Map<ImmutablePath, Node> getByPaths(Collection<Path> paths, String type) {
+        return read(() -> {
+            Map<ImmutablePath, Node> found = newLinkedHashMap();
+
+            for (Path path : paths) {
+                Node node = nodes.get(new NodeKey(type, path.getPath()));
+
+                if (node != null) {
+                    found.put(path.toImmutable(), detach(node));
+                }
+            }
+
+            return found;
+        });
+    }
+
+    @Override
+    public boolean exists(Path path, String type) {
+        return nodes.containsKey(new NodeKey(type, path.getPath()));
+    }
+
+    @Override
+    public long countChildren(Path path, String type) {
+        NavigableSet<String> childPaths = children.get(new NodeKey(type, path.getPath()));
+        return childPaths == null ? 0 : childPaths.size();
+    }
+
+    @Override
+    public long countDescendants(Path path, String type) {
+        String prefix = descendantPrefix(path.getPath());
+        return read(() -> (long) nodes.subMap(new NodeKey(type, prefix), false, new NodeKey(type, successor(prefix)), false).size());
+    }
+
+    @Override
+    public Optional<Iterable<Node>> getChildrenByPath(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            if (!nodes.containsKey(key)) {
+                return null;
+            }
+
+            List<Node> result = newArrayList();
+            NavigableSet<String> childPaths = children.get(key);
+
+            if (childPaths != null) {
+                for (String childPath : childPaths) {
+                    Node child = nodes.get(new NodeKey(type, childPath));
+
+                    if (child != null) {
+                        result.add(detach(child));
+                    }
+                }
+            }
+
+            return result;
+        }));
+    }
+
+    @Override
+    public Optional<NodePage> getChildrenByPath(Path path, String type, int pageSize, String token) {
+        checkPageSize(pageSize);
+        String after = decodeToken(token);
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            if (!nodes.containsKey(key)) {
+                return null;
+            }
+
+            List<Node> result = newArrayList();
+            NavigableSet<String> childPaths = children.get(key);
+
+            if (childPaths != null) {
+                for (String childPath : childPaths.tailSet(after, false)) {
+                    Node child = nodes.get(new NodeKey(type, childPath));
+
+                    if (child != null) {
+                        result.add(detach(child));
+                    }
+
+                    if (result.size() > pageSize) {
+                        break;
+                    }
+                }
+            }
+
+            return NodePage.of(result, pageSize);
+        }));
+    }
+
+    @Override
+    public Optional<Iterable<Node>> getAllByPath(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        return ofNullable(read(() -> {
+            if (!nodes.containsKey(key)) {
+                return null;
+            }
+
+            List<Node> result = newArrayList();
+            forEachInSubtree(key, (candidate, node) -> result.add(detach(node)));
+            return result;
+        }));
+    }
+
+    @Override
+    public void save(Node node) {
+        requireNonNull(node);
+
+        long stamp = lock.writeLock();
+        try {
+            NodeKey key = new NodeKey(node.getType(), node.getPath());
+            Node previous = nodes.get(key);
+
+            if (previous != null) {
+                checkBeforeUpdate(previous, node);
+            } else {
+                checkBeforeCreate(node, ofNullable(parentOf(node, nodes::get)));
+            }
+
+            put(key, detach(node));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void saveAll(Iterable<Node> nodes) {
+        List<Node> sorted = newArrayList(nodes);
+        // Parents always have shorter paths than their children, so they get validated first.
+        sorted.sort(comparingInt(node -> node.getPath().length()));
+
+        long stamp = lock.writeLock();
+        try {
+            Map<NodeKey, Node> staged = newHashMap();
+
+            for (Node node : sorted) {
+                NodeKey key = new NodeKey(node.getType(), node.getPath());
+                Node previous = staged.getOrDefault(key, this.nodes.get(key));
+
+                if (previous != null) {
+                    checkBeforeUpdate(previous, node);
+                } else {
+                    Node parent = parentOf(node, parentKey -> staged.getOrDefault(parentKey, this.nodes.get(parentKey)));
+                    checkBeforeCreate(node, ofNullable(parent));
+                }
+
+                staged.put(key, detach(node));
+            }
+
+            staged.forEach(this::put);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void deleteByPath(Path path, String type) {
+        deleteSubtree(path, type);
+    }
+
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type) {
+        // removed nodes are no longer shared with the index, so they are handed out without copying
+        return deleteSubtree(path, type).map(List::stream);
+    }
+
+    /**
+     * Reads, hands out and deletes the subtree under a single write lock, which is only released once the
+     * stream is exhausted or closed. Nothing can change the subtree in between, but no other write gets
+     * through either, so {@code beforeCommit} must not write to this index and the stream must be closed.
+     */
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type, Runnable beforeCommit) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        long stamp = lock.writeLock();
+        AtomicBoolean locked = new AtomicBoolean(true);
+        Runnable unlock = () -> {
+            if (locked.getAndSet(false)) {
+                lock.unlockWrite(stamp);
+            }
+        };
+
+        try {
+            if (!nodes.containsKey(key)) {
+                unlock.run();
+                return ofNullable(null);
+            }
+
+            List<Node> subtree = newArrayList();
+            forEachInSubtree(key, (candidate, node) -> subtree.add(detach(node)));
+
+            // only pulled from once the read nodes are exhausted
+            Stream<Node> delete = Stream.of(key).flatMap(deleted -> {
+                try {
+                    beforeCommit.run();
+                    removeSubtree(deleted);
+                } finally {
+                    unlock.run();
+                }
+                return Stream.empty();
+            });
+
+            return ofNullable(Stream.concat(subtree.stream(), delete).onClose(unlock));
+        } catch (RuntimeException | Error e) {
+            unlock.run();
+            throw e;
+        }
+    }
+
+    private Optional<List<Node>> deleteSubtree(Path path, String type) {
+        NodeKey key = new NodeKey(type, path.getPath());
+
+        long stamp = lock.writeLock();
+        try {
+            if (!nodes.containsKey(key)) {
+                return ofNullable(null);
+            }
+
+            return ofNullable(removeSubtree(key));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void move(Path from, Path to, String type) {
+        String source = from.getPath();
+        String target = to.getPath();
+
+        long stamp = lock.writeLock();
+        try {
+            checkBeforeMove(source, target,
+                    ofNullable(nodes.get(new NodeKey(type, source))),
+                    ofNullable(nodes.get(new NodeKey(type, target))),
+                    ofNullable(nodes.get(new NodeKey(type, Path.parentOf(target)))));
+
+            for (Node node : removeSubtree(new NodeKey(type, source))) {
+                String path = rebase(node.getPath(), source, target);
+                put(new NodeKey(type, path), new Node(path, node.getType(), node.getName(), node.getLeaf(), node.getValue()));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void copy(Path from, Path to, String type, Map<String, String> values) {
+        String source = from.getPath();
+        String target = to.getPath();
+        NodeKey key = new NodeKey(type, source);
+
+        long stamp = lock.writeLock();
+        try {
+            checkBeforeCopy(source, target,
+                    ofNullable(nodes.get(key)),
+                    ofNullable(nodes.get(new NodeKey(type, target))),
+                    ofNullable(nodes.get(new NodeKey(type, Path.parentOf(target)))));
+
+            List<Node> copies = newArrayList();
+            forEachInSubtree(key, (candidate, node) -> {
+                String value = node.getLeaf() ? values.getOrDefault(node.getValue(), node.getValue()) : node.getValue();
+                copies.add(new Node(rebase(node.getPath(), source, target), type, node.getName(), node.getLeaf(), value));
+            });
+
+            copies.forEach(node -> put(new NodeKey(type, node.getPath()), node));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Number of {@link Node}s held across all types.
+     *
+     * @return
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private void put(NodeKey key, Node node) {
+        if (nodes.put(key, node) == null && !key.getPath().equals(Path.ROOT)) {
+            NodeKey parentKey = new NodeKey(key.getType(), Path.parentOf(key.getPath()));
+            children.computeIfAbsent(parentKey, k -> new ConcurrentSkipListSet<>()).add(key.getPath());
+        }
+    }
+
+    /**
+     * Remove an existing {@link Node} and everything underneath it. Only call while holding the write lock.
+     *
+     * @param key
+     * @return
+     */
+    private List<Node> removeSubtree(NodeKey key) {
+        List<NodeKey> subtree = newArrayList();
+        forEachInSubtree(key, (candidate, node) -> subtree.add(candidate));
+
+        List<Node> removed = newArrayList();
+        for (NodeKey deleted : subtree) {
+            children.remove(deleted);
+            removed.add(nodes.remove(deleted));
+        }
+
+        if (!key.getPath().equals(Path.ROOT)) {
+            NavigableSet<String> siblings = children.get(new NodeKey(key.getType(), Path.parentOf(key.getPath())));
+
+            if (siblings != null) {
+                siblings.remove(key.getPath());
+            }
+        }
+
+        return removed;
+    }
+
+    private void forEachInSubtree(NodeKey key, BiConsumer<NodeKey, Node> action) {
+        nodes.subMap(key, true, key.subtreeEnd(), false).forEach((candidate, node) -> {
+            // Paths sorting between a path and its descendants (sibling "a\u0000" after "a") fall
+            // in the range without being part of the subtree.
+            if (isSubtreeOf(key.getPath(), candidate.getPath())) {
+                action.accept(candidate, node);
+            }
+        });
+    }
+
+    private static Node parentOf(Node node, Function<NodeKey, Node> lookup) {
+        String path = node.getPath();
+        return path.equals(Path.ROOT) ? null : lookup.apply(new NodeKey(node.getType(), Path.parentOf(path)));
+    }
+
+    private <R> R read(Supplier<R> reader) {
+        long stamp = lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            R result = reader.get();
+
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static Node detach(Node node) {
+        return new Node(node.getPath(), node.getType(), node.getName(), node.getLeaf(), node.getValue());
+    }
+}
@@ -0,0 +1,217 @@
+package tree.me.service.reactive;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Publisher} pulling its elements from a {@link Stream} only as fast as subscribers request them.
+ * Every subscriber gets its own {@link Stream}, opened on the first request and closed once it is drained,
+ * fails or the subscription is cancelled.
+ * <p>
+ * Elements are read and pushed by a drain loop on the {@link Executor}. Concurrent and re-entrant requests
+ * only add demand to a running loop, so the {@link Stream} is used by one thread at a time, each pass seeing
+ * everything the previous one did, though with a pool successive passes may run on different threads. Without
+ * an {@link Executor} the loop runs on the requesting thread, so {@link Subscription#request(long)} blocks
+ * while the {@link Stream} reads, e.g. from a database, which breaks rule 3.4 of the Reactive Streams
+ * specification; only do that for subscribers that expect it.
+ *
+ * @param <T>
+ */
+public class StreamPublisher<T> implements Publisher<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamPublisher.class);
+
+    private final Supplier<Stream<T>> streams;
+    private final Executor executor;
+
+    /**
+     * Publish on the requesting thread, blocking it while the {@link Stream} reads.
+     *
+     * @param streams
+     */
+    public StreamPublisher(Supplier<Stream<T>> streams) {
+        this(streams, Runnable::run);
+    }
+
+    /**
+     * Publish on the executor, so requests return right away.
+     *
+     * @param streams
+     * @param executor
+     */
+    public StreamPublisher(Supplier<Stream<T>> streams, Executor executor) {
+        requireNonNull(streams);
+        requireNonNull(executor);
+        this.streams = streams;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        requireNonNull(subscriber);
+        subscriber.onSubscribe(new StreamSubscription<>(subscriber, streams, executor));
+    }
+
+    private static class StreamSubscription<T> implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final Supplier<Stream<T>> streams;
+        private final Executor executor;
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        // Only touched by the thread currently draining, handed over through pending.
+        private Stream<T> stream;
+        private Iterator<T> iterator;
+        private boolean done;
+
+        private StreamSubscription(Subscriber<? super T> subscriber, Supplier<Stream<T>> streams, Executor executor) {
+            this.subscriber = subscriber;
+            this.streams = streams;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " elements, must request at least 1.");
+                cancelled = true;
+            } else {
+                demand.accumulateAndGet(n, (current, requested) -> {
+                    long sum = current + requested;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Start the drain loop on the executor unless it is already running, in which case it picks up the
+         * new demand or cancellation before it stops.
+         */
+        private void drain() {
+            if (pending.getAndIncrement() != 0) {
+                return;
+            }
+
+            try {
+                executor.execute(this::drainLoop);
+            } catch (RejectedExecutionException e) {
+                LOG.error("Executor rejected publishing, cancelling.", e);
+                error = e;
+                cancelled = true;
+                drainLoop();
+            }
+        }
+
+        /**
+         * Emit on behalf of every concurrent or re-entrant {@link #request(long)} and {@link #cancel()},
+         * one pass at a time, so calls made from within {@link Subscriber#onNext(Object)} don't recurse.
+         */
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                emit();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (done) {
+                return;
+            }
+
+            while (!cancelled && demand.get() > 0) {
+                T next;
+
+                // only failures of the source become onError, never those of the subscriber
+                try {
+                    if (iterator == null) {
+                        stream = streams.get();
+                        iterator = stream.iterator();
+                    }
+
+                    if (!iterator.hasNext()) {
+                        finish();
+                        signal(subscriber::onComplete);
+                        return;
+                    }
+
+                    next = iterator.next();
+                } catch (RuntimeException e) {
+                    LOG.debug("Publishing failed.", e);
+                    finish();
+                    signal(() -> subscriber.onError(e));
+                    return;
+                }
+
+                try {
+                    subscriber.onNext(next);
+                } catch (RuntimeException e) {
+                    // A throwing subscriber has cancelled its subscription (rule 2.13), so it isn't signalled again.
+                    LOG.error("Subscriber failed on next element, cancelling.", e);
+                    cancelled = true;
+                    finish();
+                    return;
+                }
+
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+            }
+
+            if (cancelled) {
+                finish();
+
+                if (error != null) {
+                    signal(() -> subscriber.onError(error));
+                }
+            }
+        }
+
+        /**
+         * Deliver a terminal signal. The subscription is over either way, so a throwing subscriber is only logged.
+         */
+        private void signal(Runnable terminal) {
+            try {
+                terminal.run();
+            } catch (RuntimeException e) {
+                LOG.error("Subscriber failed on terminal signal.", e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+
+            if (stream != null) {
+                stream.close();
+                stream = null;
+                iterator = null;
+            }
+        }
+    }
+}
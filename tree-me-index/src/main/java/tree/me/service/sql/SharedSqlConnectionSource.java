@@ -0,0 +1,72 @@
+package tree.me.service.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Serializes access to a single caller supplied {@link Connection}. Operations never interleave on
+ * the {@link Connection}, so autocommit state and statements can't be raced by concurrent callers.
+ * The lock is not reentrant and may be released from a different thread than the one that borrowed.
+ */
+class SharedSqlConnectionSource implements SqlConnectionSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedSqlConnectionSource.class);
+
+    private final SqlStatementCache.Counters counters = new SqlStatementCache.Counters();
+    private final SqlConnection connection;
+    private final Semaphore lock = new Semaphore(1, true);
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+
+    SharedSqlConnectionSource(Connection connection, int statementCacheSize) {
+        requireNonNull(connection);
+        this.connection = new SqlConnection(connection, new SqlStatementCache(connection, statementCacheSize, counters));
+    }
+
+    @Override
+    public SqlConnection borrow() throws SQLException {
+        waiting.incrementAndGet();
+        try {
+            lock.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the connection.", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        borrowed.incrementAndGet();
+        return connection;
+    }
+
+    @Override
+    public void release(SqlConnection connection) {
+        try {
+            SqlConnections.reset(connection.getConnection());
+        } catch (SQLException e) {
+            LOG.warn("Failed to reset shared connection.", e);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public SqlConnectionPoolStats getStats() {
+        int active = 1 - lock.availablePermits();
+        return new SqlConnectionPoolStats(1, active, 1 - active, waiting.get(), borrowed.get(), 1, 0, 0);
+    }
+
+    @Override
+    public SqlStatementCacheStats getStatementCacheStats() {
+        return counters.snapshot();
+    }
+}
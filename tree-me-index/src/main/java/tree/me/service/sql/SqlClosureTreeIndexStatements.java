@@ -0,0 +1,231 @@
+package tree.me.service.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tree.me.core.index.Node;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+
+import static java.util.Optional.ofNullable;
+import static tree.me.service.sql.SqlTreeIndexStatements.executeBatch;
+import static tree.me.service.sql.SqlTreeIndexStatements.executeDdl;
+import static tree.me.service.sql.SqlTreeIndexStatements.getParentPath;
+
+/**
+ * SQL for the node_closure table used by {@link SqlTreeLayout#CLOSURE}. Rows of the nodes table are
+ * still written through {@link SqlTreeIndexStatements}; the statements here keep the closure in step.
+ */
+public class SqlClosureTreeIndexStatements {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlClosureTreeIndexStatements.class);
+
+    static final String ID_SEQUENCE = "nodes_id_seq";
+
+    private static final String GET_ID = "SELECT id FROM nodes WHERE path=? AND type=?;";
+    private static final String GET_ALL_PATH = "SELECT n.* FROM nodes a " +
+            "JOIN node_closure c ON c.ancestor=a.id " +
+            "JOIN nodes n ON n.id=c.descendant " +
+            "WHERE a.path=? AND a.type=?;";
+    // A node is its own ancestor at distance 0, and at distance d + 1 of every ancestor of its parent.
+    private static final String LINK = "INSERT INTO node_closure(ancestor, descendant, distance) " +
+            "SELECT n.id, n.id, 0 FROM nodes n WHERE n.path=? AND n.type=? " +
+            "UNION ALL " +
+            "SELECT c.ancestor, n.id, c.distance + 1 FROM nodes n, nodes p, node_closure c " +
+            "WHERE n.path=? AND n.type=? AND p.path=? AND p.type=? AND c.descendant=p.id;";
+    // Moving a subtree drops the links between its nodes and their old ancestors, keeping the links
+    // inside the subtree, then links every node of the subtree to the new parent and its ancestors.
+    private static final String UNLINK_ANCESTORS = "DELETE FROM node_closure " +
+            "WHERE descendant IN (SELECT descendant FROM node_closure WHERE ancestor=?) " +
+            "AND ancestor NOT IN (SELECT descendant FROM node_closure WHERE ancestor=?);";
+    private static final String LINK_SUBTREE = "INSERT INTO node_closure(ancestor, descendant, distance) " +
+            "SELECT a.ancestor, d.descendant, a.distance + d.distance + 1 FROM node_closure a, node_closure d " +
+            "WHERE a.descendant=? AND d.ancestor=?;";
+    // Links every copied node the way its original is linked inside the copied subtree, matching
+    // originals to copies through the rewritten path.
+    private static final String COPY_LINKS = "INSERT INTO node_closure(ancestor, descendant, distance) " +
+            "SELECT ca.id, cd.id, c.distance FROM node_closure s " +
+            "JOIN node_closure c ON c.ancestor=s.descendant " +
+            "JOIN nodes oa ON oa.id=c.ancestor " +
+            "JOIN nodes od ON od.id=c.descendant " +
+            "JOIN nodes ca ON ca.type=oa.type AND ca.path=? || SUBSTRING(oa.path, ?) " +
+            "JOIN nodes cd ON cd.type=od.type AND cd.path=? || SUBSTRING(od.path, ?) " +
+            "WHERE s.ancestor=?;";
+    private static final String DELETE_NODES = "DELETE FROM nodes WHERE id IN " +
+            "(SELECT descendant FROM node_closure WHERE ancestor=?);";
+    private static final String DELETE_LINKS = "DELETE FROM node_closure WHERE descendant IN " +
+            "(SELECT descendant FROM node_closure WHERE ancestor=?);";
+
+    public static Optional<Long> getId(SqlConnection connection, String path, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_ID);
+
+        statement.setString(1, path);
+        statement.setString(2, type);
+
+        LOG.debug("Query getId: {}", statement);
+
+        try (ResultSet result = statement.executeQuery()) {
+            return result.next() ? ofNullable(result.getLong(1)) : ofNullable(null);
+        }
+    }
+
+    public static ResultSet getAllPath(SqlConnection connection, String path, String type) throws SQLException {
+        return getAllPath(connection, path, type, 0);
+    }
+
+    public static ResultSet getAllPath(SqlConnection connection, String path, String type, int fetchSize) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_ALL_PATH);
+
+        statement.setString(1, path);
+        statement.setString(2, type);
+        statement.setFetchSize(fetchSize);
+
+        LOG.debug("Query getAllPath: {}", statement);
+
+        return statement.executeQuery();
+    }
+
+    /**
+     * Add the closure rows of a newly created node. Its parent must already be linked.
+     *
+     * @param connection
+     * @param node
+     * @throws SQLException
+     */
+    public static void link(SqlConnection connection, Node node) throws SQLException {
+        PreparedStatement statement = connection.prepare(LINK);
+
+        bindLink(statement, node);
+
+        LOG.debug("Query link: {}", statement);
+
+        statement.executeUpdate();
+    }
+
+    /**
+     * Add the closure rows of newly created nodes through JDBC batches. Parents must either already
+     * be linked or come before their children.
+     *
+     * @param connection
+     * @param nodes
+     * @throws SQLException
+     */
+    public static void linkAll(SqlConnection connection, Iterable<Node> nodes) throws SQLException {
+        PreparedStatement statement = connection.prepare(LINK);
+
+        executeBatch(statement, nodes, SqlClosureTreeIndexStatements::bindLink);
+    }
+
+    /**
+     * Re-link the subtree of the node with the ID underneath a new parent, e.g. after it was moved.
+     * Runs in whatever transaction the connection is in.
+     *
+     * @param connection
+     * @param id
+     * @param parentId
+     * @throws SQLException
+     */
+    public static void relink(SqlConnection connection, long id, long parentId) throws SQLException {
+        PreparedStatement unlink = connection.prepare(UNLINK_ANCESTORS);
+        unlink.setLong(1, id);
+        unlink.setLong(2, id);
+
+        LOG.debug("Query unlink ancestors: {}", unlink);
+        unlink.executeUpdate();
+
+        linkSubtree(connection, id, parentId);
+    }
+
+    /**
+     * Add the closure rows of a subtree copied from {@code from} to {@code to}, given the ID of the node
+     * copied from and the ID of the copy's parent. Runs in whatever transaction the connection is in.
+     *
+     * @param connection
+     * @param from
+     * @param to
+     * @param type
+     * @param id
+     * @param parentId
+     * @throws SQLException
+     */
+    public static void linkCopy(SqlConnection connection, String from, String to, String type, long id, long parentId) throws SQLException {
+        PreparedStatement statement = connection.prepare(COPY_LINKS);
+        int rest = from.length() + 1;
+
+        statement.setString(1, to);
+        statement.setInt(2, rest);
+        statement.setString(3, to);
+        statement.setInt(4, rest);
+        statement.setLong(5, id);
+
+        LOG.debug("Query link copy: {}", statement);
+        statement.executeUpdate();
+
+        linkSubtree(connection, getId(connection, to, type).get(), parentId);
+    }
+
+    private static void linkSubtree(SqlConnection connection, long id, long parentId) throws SQLException {
+        PreparedStatement link = connection.prepare(LINK_SUBTREE);
+        link.setLong(1, parentId);
+        link.setLong(2, id);
+
+        LOG.debug("Query link subtree: {}", link);
+        link.executeUpdate();
+    }
+
+    /**
+     * Delete the node with the ID and everything underneath it, along with their closure rows.
+     *
+     * @param connection
+     * @param id
+     * @throws SQLException
+     */
+    public static void delete(SqlConnection connection, long id) throws SQLException {
+        PreparedStatement nodes = connection.prepare(DELETE_NODES);
+        nodes.setLong(1, id);
+
+        LOG.debug("Query delete: {}", nodes);
+        nodes.executeUpdate();
+
+        PreparedStatement links = connection.prepare(DELETE_LINKS);
+        links.setLong(1, id);
+
+        LOG.debug("Query delete links: {}", links);
+        links.executeUpdate();
+    }
+
+    /**
+     * Add the id column, drawn from a sequence in the dialect's syntax, and the node_closure table.
+     *
+     * @param connection
+     * @param dialect
+     * @throws SQLException
+     */
+    public static void createTables(SqlConnection connection, SqlDialect dialect) throws SQLException {
+        try (Statement statement = connection.getConnection().createStatement()) {
+            executeDdl(statement, "CREATE SEQUENCE IF NOT EXISTS " + ID_SEQUENCE + ";");
+            executeDdl(statement, "ALTER TABLE nodes ADD COLUMN IF NOT EXISTS " +
+                    "id BIGINT DEFAULT " + dialect.nextValue(ID_SEQUENCE) + ";");
+            executeDdl(statement, "CREATE UNIQUE INDEX IF NOT EXISTS nodes_id ON nodes (id);");
+            executeDdl(statement, "CREATE TABLE IF NOT EXISTS node_closure (\n" +
+                    "  ancestor BIGINT NOT NULL,\n" +
+                    "  descendant BIGINT NOT NULL,\n" +
+                    "  distance INTEGER NOT NULL,\n" +
+                    "  PRIMARY KEY (ancestor, descendant)" +
+                    ");");
+            executeDdl(statement, "CREATE INDEX IF NOT EXISTS node_closure_descendant ON node_closure (descendant);");
+        }
+    }
+
+    private static void bindLink(PreparedStatement statement, Node node) throws SQLException {
+        statement.setString(1, node.getPath());
+        statement.setString(2, node.getType());
+        statement.setString(3, node.getPath());
+        statement.setString(4, node.getType());
+        statement.setString(5, getParentPath(node.getPath()));
+        statement.setString(6, node.getType());
+    }
+}
@@ -0,0 +1,48 @@
+package tree.me.service.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link Connection} handed out by a {@link SqlConnectionPool} together with the
+ * {@link PreparedStatement}s cached for it.
+ */
+public class SqlConnection {
+
+    private final Connection connection;
+    private final SqlStatementCache statements;
+
+    SqlConnection(Connection connection, SqlStatementCache statements) {
+        requireNonNull(connection);
+        requireNonNull(statements);
+        this.connection = connection;
+        this.statements = statements;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Fetch the cached {@link PreparedStatement} for the SQL, preparing it on first use. The returned
+     * statement is owned by the cache and must not be closed by the caller.
+     *
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        return statements.prepare(sql);
+    }
+
+    /**
+     * Closes the cached statements and the underlying {@link Connection}.
+     */
+    void close() {
+        statements.close();
+        SqlConnections.closeQuietly(connection);
+    }
+}
@@ -0,0 +1,252 @@
+package tree.me.service.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded pool of {@link Connection}s created from a {@link DataSource}. At most {@code maxSize}
+ * connections are ever borrowed at once; callers beyond that wait up to {@code maxWaitMillis}
+ * before failing with a {@link SQLTimeoutException}. Idle connections are reused most recently
+ * released first and, when {@code validateOnBorrow} is set, checked with
+ * {@link Connection#isValid(int)} before being handed out. Each pooled connection keeps its own
+ * cache of up to {@code statementCacheSize} prepared statements for as long as it stays in the pool.
+ */
+public class SqlConnectionPool implements SqlConnectionSource, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlConnectionPool.class);
+
+    public static final int DEFAULT_MAX_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+    public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final boolean validateOnBorrow;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final BlockingDeque<SqlConnection> idle = new LinkedBlockingDeque<>();
+    private final SqlStatementCache.Counters counters = new SqlStatementCache.Counters();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public SqlConnectionPool(DataSource dataSource, int maxSize, long maxWaitMillis,
+                             boolean validateOnBorrow, int validationTimeoutSeconds, int statementCacheSize) {
+        requireNonNull(dataSource);
+
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1.");
+        }
+
+        if (maxWaitMillis < 0 || validationTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("Timeouts must not be negative.");
+        }
+
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException("Statement cache size must be at least 1.");
+        }
+
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.validateOnBorrow = validateOnBorrow;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    @Override
+    public SqlConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        acquire();
+
+        try {
+            SqlConnection connection = takeIdle();
+
+            if (connection == null) {
+                connection = open();
+            }
+
+            active.incrementAndGet();
+            borrowed.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void release(SqlConnection connection) {
+        try {
+            SqlConnections.reset(connection.getConnection());
+
+            if (closed) {
+                connection.close();
+            } else {
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            LOG.warn("Failed to reset pooled connection, discarding it.", e);
+            connection.close();
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    @Override
+    public SqlConnectionPoolStats getStats() {
+        return new SqlConnectionPoolStats(maxSize, active.get(), idle.size(), waiting.get(), borrowed.get(),
+                created.get(), timeouts.get(), validationFailures.get());
+    }
+
+    @Override
+    public SqlStatementCacheStats getStatementCacheStats() {
+        return counters.snapshot();
+    }
+
+    /**
+     * Closes all idle connections. Connections still borrowed are closed as they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        SqlConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    private void acquire() throws SQLException {
+        boolean acquired;
+
+        waiting.incrementAndGet();
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + maxWaitMillis +
+                    "ms waiting for a connection. Pool stats: " + getStats());
+        }
+    }
+
+    private SqlConnection open() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(true);
+        created.incrementAndGet();
+
+        return new SqlConnection(connection, new SqlStatementCache(connection, statementCacheSize, counters));
+    }
+
+    private SqlConnection takeIdle() {
+        SqlConnection connection;
+
+        while ((connection = idle.pollFirst()) != null) {
+            if (isUsable(connection.getConnection())) {
+                return connection;
+            }
+
+            validationFailures.incrementAndGet();
+            LOG.debug("Discarding invalid pooled connection.");
+            connection.close();
+        }
+
+        return null;
+    }
+
+    private boolean isUsable(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            return !validateOnBorrow || connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public static SqlConnectionPoolBuilder builder() {
+        return new SqlConnectionPoolBuilder();
+    }
+
+    public static class SqlConnectionPoolBuilder {
+        private DataSource dataSource;
+        private int maxSize = DEFAULT_MAX_SIZE;
+        private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+        private boolean validateOnBorrow = true;
+        private int validationTimeoutSeconds = DEFAULT_VALIDATION_TIMEOUT_SECONDS;
+        private int statementCacheSize = SqlStatementCache.DEFAULT_CAPACITY;
+
+        public SqlConnectionPoolBuilder() {
+        }
+
+        public SqlConnectionPoolBuilder dataSource(DataSource dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
+        public SqlConnectionPoolBuilder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public SqlConnectionPoolBuilder maxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        public SqlConnectionPoolBuilder validateOnBorrow(boolean validateOnBorrow) {
+            this.validateOnBorrow = validateOnBorrow;
+            return this;
+        }
+
+        public SqlConnectionPoolBuilder validationTimeoutSeconds(int validationTimeoutSeconds) {
+            this.validationTimeoutSeconds = validationTimeoutSeconds;
+            return this;
+        }
+
+        public SqlConnectionPoolBuilder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        public SqlConnectionPool build() {
+            return new SqlConnectionPool(dataSource, maxSize, maxWaitMillis, validateOnBorrow,
+                    validationTimeoutSeconds, statementCacheSize);
+        }
+    }
+}
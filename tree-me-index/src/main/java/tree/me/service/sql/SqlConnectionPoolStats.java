@@ -0,0 +1,84 @@
+package tree.me.service.sql;
+
+/**
+ * Point in time view of a {@link SqlConnectionPool}. Counters prefixed with "total" are
+ * cumulative since the pool was created.
+ */
+public class SqlConnectionPoolStats {
+
+    private final int maxSize;
+    private final int active;
+    private final int idle;
+    private final int waiting;
+    private final long totalBorrowed;
+    private final long totalCreated;
+    private final long totalTimeouts;
+    private final long totalValidationFailures;
+
+    public SqlConnectionPoolStats(int maxSize, int active, int idle, int waiting, long totalBorrowed,
+                                  long totalCreated, long totalTimeouts, long totalValidationFailures) {
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.totalBorrowed = totalBorrowed;
+        this.totalCreated = totalCreated;
+        this.totalTimeouts = totalTimeouts;
+        this.totalValidationFailures = totalValidationFailures;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getTotalBorrowed() {
+        return totalBorrowed;
+    }
+
+    public long getTotalCreated() {
+        return totalCreated;
+    }
+
+    public long getTotalTimeouts() {
+        return totalTimeouts;
+    }
+
+    public long getTotalValidationFailures() {
+        return totalValidationFailures;
+    }
+
+    /**
+     * Fraction of the pool currently borrowed, between 0 and 1.
+     *
+     * @return
+     */
+    public double getUtilization() {
+        return maxSize == 0 ? 0 : (double) active / maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlConnectionPoolStats{" +
+                "maxSize=" + maxSize +
+                ", active=" + active +
+                ", idle=" + idle +
+                ", waiting=" + waiting +
+                ", totalBorrowed=" + totalBorrowed +
+                ", totalCreated=" + totalCreated +
+                ", totalTimeouts=" + totalTimeouts +
+                ", totalValidationFailures=" + totalValidationFailures +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package tree.me.service.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Hands out {@link SqlConnection}s to the {@link SqlTreeMeIndex}. Every index operation borrows
+ * exactly one {@link SqlConnection} and releases it once the operation completes.
+ */
+interface SqlConnectionSource {
+
+    /**
+     * Borrow a {@link SqlConnection} for the duration of a single operation.
+     *
+     * @return
+     * @throws SQLException
+     */
+    SqlConnection borrow() throws SQLException;
+
+    /**
+     * Return a previously borrowed {@link SqlConnection}.
+     *
+     * @param connection
+     */
+    void release(SqlConnection connection);
+
+    /**
+     * Snapshot of the current utilization of this source.
+     *
+     * @return
+     */
+    SqlConnectionPoolStats getStats();
+
+    /**
+     * Prepared statement reuse across every {@link SqlConnection} of this source.
+     *
+     * @return
+     */
+    SqlStatementCacheStats getStatementCacheStats();
+}
@@ -0,0 +1,37 @@
+package tree.me.service.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+final class SqlConnections {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlConnections.class);
+
+    private SqlConnections() {
+    }
+
+    /**
+     * Puts a {@link Connection} back into autocommit mode, rolling back anything an
+     * operation left behind so the next borrower starts from a clean state.
+     *
+     * @param connection
+     * @throws SQLException
+     */
+    static void reset(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.warn("Failed to close connection.", e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package tree.me.service.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Database specific SQL the {@link SqlTreeMeIndex} can use. Detected from the {@link Connection}'s
+ * metadata unless set on the builder.
+ */
+public enum SqlDialect {
+
+    /**
+     * H2, in any compatibility mode. Saves are a single MERGE.
+     */
+    H2,
+
+    /**
+     * PostgreSQL 9.6 or later. Saves are a single INSERT ... ON CONFLICT.
+     */
+    POSTGRESQL,
+
+    /**
+     * Anything else. Saves read the previous node and its parent before writing.
+     */
+    GENERIC;
+
+    /**
+     * Whether a node can be validated and written in a single statement.
+     *
+     * @return
+     */
+    public boolean supportsUpsert() {
+        return this != GENERIC;
+    }
+
+    /**
+     * Expression drawing the next value of the sequence, used for the IDs of {@link SqlTreeLayout#CLOSURE}.
+     * Anything but PostgreSQL gets the standard {@code NEXT VALUE FOR}.
+     *
+     * @param sequence
+     * @return
+     */
+    public String nextValue(String sequence) {
+        return this == POSTGRESQL ? "nextval('" + sequence + "')" : "NEXT VALUE FOR " + sequence;
+    }
+
+    public static SqlDialect of(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName();
+
+        if ("H2".equalsIgnoreCase(product)) {
+            return H2;
+        }
+
+        if ("PostgreSQL".equalsIgnoreCase(product)) {
+            return POSTGRESQL;
+        }
+
+        return GENERIC;
+    }
+}
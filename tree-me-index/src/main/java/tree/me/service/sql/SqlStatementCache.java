@@ -0,0 +1,91 @@
+package tree.me.service.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of {@link PreparedStatement}s keyed by SQL text for a single {@link Connection}.
+ * Statements handed out remain owned by the cache; callers close their {@link java.sql.ResultSet}s but
+ * never the statements. Statements are closed when evicted or when the cache is closed.
+ * <p>
+ * Not thread safe, a cache is only ever used by whoever currently holds its {@link Connection}.
+ */
+class SqlStatementCache implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlStatementCache.class);
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Connection connection;
+    private final Counters counters;
+    private final Map<String, PreparedStatement> statements;
+
+    SqlStatementCache(Connection connection, int capacity, Counters counters) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Statement cache capacity must be at least 1.");
+        }
+
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    counters.evictions.incrementAndGet();
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+
+        if (statement != null && !statement.isClosed()) {
+            counters.hits.incrementAndGet();
+            return statement;
+        }
+
+        counters.misses.incrementAndGet();
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+
+        return statement;
+    }
+
+    @Override
+    public void close() {
+        statements.values().forEach(SqlStatementCache::closeQuietly);
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.warn("Failed to close cached statement.", e);
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counts shared by every cache of a {@link SqlConnectionSource}.
+     */
+    static class Counters {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        SqlStatementCacheStats snapshot() {
+            return new SqlStatementCacheStats(hits.get(), misses.get(), evictions.get());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package tree.me.service.sql;
+
+/**
+ * Cumulative counts of {@link java.sql.PreparedStatement} reuse across all connections of an index.
+ */
+public class SqlStatementCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public SqlStatementCacheStats(long hits, long misses, long evictions) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Fraction of statement lookups served from the cache, between 0 and 1.
+     *
+     * @return
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlStatementCacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,203 @@
+package tree.me.service.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tree.me.core.index.Node;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static tree.me.service.sql.SqlClosureTreeIndexStatements.ID_SEQUENCE;
+import static tree.me.service.sql.SqlClosureTreeIndexStatements.linkAll;
+import static tree.me.service.sql.SqlTreeIndexStatements.executeDdl;
+import static tree.me.service.sql.SqlTreeIndexStatements.getParentPath;
+
+/**
+ * Data migrations for tables created by earlier versions of the {@link SqlTreeMeIndex}. Migrations work
+ * in small committed batches so the table and its indexes stay available to other readers and writers
+ * while they run, and they are safe to run again at any time. {@link #applyOnce(SqlConnection, String, Migration)}
+ * records each migration run on startup in the node_migrations table, so later startups skip it.
+ */
+public class SqlTreeIndexMigrations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlTreeIndexMigrations.class);
+
+    public static final String PARENT_PATHS = "parent_paths";
+    public static final String CLOSURE = "closure";
+
+    private static final String IS_APPLIED = "SELECT 1 FROM node_migrations WHERE name=?;";
+    private static final String MARK_APPLIED = "INSERT INTO node_migrations(name) VALUES (?);";
+
+    private static final String GET_MISSING_PARENT_PATHS = "SELECT path, type FROM nodes " +
+            "WHERE parent_path IS NULL LIMIT ?;";
+    private static final String SET_PARENT_PATH = "UPDATE nodes SET parent_path=? " +
+            "WHERE path=? AND type=? AND parent_path IS NULL;";
+
+    private static final String ASSIGN_IDS = "UPDATE nodes SET id = %s WHERE id IS NULL;";
+    private static final String GET_UNLINKED = "SELECT n.path, n.type FROM nodes n WHERE NOT EXISTS " +
+            "(SELECT 1 FROM node_closure c WHERE c.ancestor=n.id AND c.descendant=n.id) " +
+            "ORDER BY n.depth LIMIT ?;";
+
+    @FunctionalInterface
+    public interface Migration {
+        int apply(SqlConnection connection) throws SQLException;
+    }
+
+    /**
+     * Run the migration unless it was already recorded under the name, then record it.
+     *
+     * @param connection
+     * @param name
+     * @param migration
+     * @return number of rows migrated, 0 if the migration was skipped
+     * @throws SQLException
+     */
+    public static int applyOnce(SqlConnection connection, String name, Migration migration) throws SQLException {
+        if (isApplied(connection, name)) {
+            LOG.debug("Migration {} already applied, skipping.", name);
+            return 0;
+        }
+
+        int migrated = migration.apply(connection);
+
+        PreparedStatement mark = connection.prepare(MARK_APPLIED);
+        mark.setString(1, name);
+
+        try {
+            mark.executeUpdate();
+        } catch (SQLException e) {
+            // another index starting up at the same time recorded it first
+            if (!isApplied(connection, name)) {
+                throw e;
+            }
+        }
+
+        if (!connection.getConnection().getAutoCommit()) {
+            connection.getConnection().commit();
+        }
+
+        LOG.info("Applied migration {} to {} nodes.", name, migrated);
+        return migrated;
+    }
+
+    public static void createTables(SqlConnection connection) throws SQLException {
+        try (Statement statement = connection.getConnection().createStatement()) {
+            executeDdl(statement, "CREATE TABLE IF NOT EXISTS node_migrations (\n" +
+                    "  name VARCHAR(100) NOT NULL,\n" +
+                    "  PRIMARY KEY (name)" +
+                    ");");
+        }
+    }
+
+    private static boolean isApplied(SqlConnection connection, String name) throws SQLException {
+        PreparedStatement statement = connection.prepare(IS_APPLIED);
+        statement.setString(1, name);
+
+        try (ResultSet result = statement.executeQuery()) {
+            return result.next();
+        }
+    }
+
+    /**
+     * Fill in parent_path for rows written before the column existed, or by an older version of the
+     * index during a rolling upgrade.
+     *
+     * @param connection
+     * @param batchSize
+     * @return number of rows updated
+     * @throws SQLException
+     */
+    public static int backfillParentPaths(SqlConnection connection, int batchSize) throws SQLException {
+        PreparedStatement select = connection.prepare(GET_MISSING_PARENT_PATHS);
+        PreparedStatement update = connection.prepare(SET_PARENT_PATH);
+        int total = 0;
+
+        connection.getConnection().setAutoCommit(false);
+
+        try {
+            while (true) {
+                int pending = 0;
+
+                select.setInt(1, batchSize);
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        String path = result.getString(1);
+
+                        update.setString(1, getParentPath(path));
+                        update.setString(2, path);
+                        update.setString(3, result.getString(2));
+                        update.addBatch();
+                        pending++;
+                    }
+                }
+
+                if (pending == 0) {
+                    break;
+                }
+
+                update.executeBatch();
+                connection.getConnection().commit();
+                total += pending;
+
+                LOG.info("Backfilled parent_path for {} nodes.", total);
+            }
+        } finally {
+            update.clearBatch();
+        }
+
+        return total;
+    }
+
+    /**
+     * Give every node an ID and build the closure rows for nodes that have none yet, such as nodes
+     * written while the table used {@link SqlTreeLayout#PATH}. Nodes are linked shallowest first so
+     * parents are always linked before their children.
+     *
+     * @param connection
+     * @param dialect
+     * @param batchSize
+     * @return number of nodes linked
+     * @throws SQLException
+     */
+    public static int backfillClosure(SqlConnection connection, SqlDialect dialect, int batchSize) throws SQLException {
+        PreparedStatement assign = connection.prepare(String.format(ASSIGN_IDS, dialect.nextValue(ID_SEQUENCE)));
+        PreparedStatement select = connection.prepare(GET_UNLINKED);
+        int total = 0;
+
+        connection.getConnection().setAutoCommit(false);
+
+        if (assign.executeUpdate() > 0) {
+            connection.getConnection().commit();
+        }
+
+        while (true) {
+            List<Node> unlinked = newArrayList();
+
+            select.setInt(1, batchSize);
+            try (ResultSet result = select.executeQuery()) {
+                while (result.next()) {
+                    unlinked.add(Node.builder()
+                            .path(result.getString(1))
+                            .type(result.getString(2))
+                            .build());
+                }
+            }
+
+            if (unlinked.isEmpty()) {
+                break;
+            }
+
+            linkAll(connection, unlinked);
+            connection.getConnection().commit();
+            total += unlinked.size();
+
+            LOG.info("Backfilled closure for {} nodes.", total);
+        }
+
+        return total;
+    }
+}
@@ -1,134 +1,694 @@
 package tree.me.service.sql;
 
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Node;
 
 import java.sql.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import static tree.me.core.index.Path.DELIM;
 import static tree.me.core.index.Path.ROOT;
+import static tree.me.core.index.Path.descendantPrefix;
+import static tree.me.core.index.Path.successor;
 
+/**
+ * SQL for the nodes table. Statements come from the {@link SqlConnection}'s statement cache and are
+ * reused across calls; queries hand back a {@link ResultSet} the caller must close.
+ */
 public class SqlTreeIndexStatements {
 
     private static final Logger LOG = LoggerFactory.getLogger(SqlTreeIndexStatements.class);
 
-    private static final String WILDCARD = "%";
-
-    public static ResultSet getExactPath(Connection connection, String path, String type) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(
-                "SELECT * FROM nodes WHERE path=? AND type=?;");
+    static final String NO_PARENT = "";
+
+    private static final String GET_EXACT_PATH = "SELECT * FROM nodes WHERE path=? AND type=?;";
+    // Subtrees are half open key ranges [path, successor(descendant prefix)) so they are served by index
+    // range scans. The trailing predicate drops siblings sharing the prefix, such as /ab for /a.
+    // This relies on path comparing by code point (H2's default, a "C" collation elsewhere).
+    private static final String GET_ALL_PATH = "SELECT * FROM nodes " +
+            "WHERE type=? AND path>=? AND path<? AND (path=? OR path>=?);";
+    // Existence checks and counts only touch index entries, never row payloads.
+    private static final String EXISTS_PATH = "SELECT 1 FROM nodes WHERE path=? AND type=? LIMIT 1;";
+    private static final String COUNT_CHILDREN = "SELECT COUNT(*) FROM nodes WHERE type=? AND parent_path=?;";
+    // Descendants all start with the descendant prefix, so unlike subtrees they are a single key range.
+    // The prefix itself is never a stored path, except for the root, which isn't its own descendant.
+    private static final String COUNT_DESCENDANTS = "SELECT COUNT(*) FROM nodes WHERE type=? AND path>? AND path<?;";
+    private static final String GET_CHILDREN_PATH = "SELECT * FROM nodes WHERE type=? AND parent_path=?;";
+    // Pages seek past the last path of the previous page on (type, parent_path, path), so every page
+    // costs the same no matter how deep into the group it is.
+    private static final String GET_CHILDREN_PAGE = "SELECT * FROM nodes " +
+            "WHERE type=? AND parent_path=? AND path>? ORDER BY path LIMIT ?;";
+    private static final String CREATE = "INSERT INTO nodes(path, type, name, leaf, value, depth, parent_path) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?);";
+    private static final String UPDATE = "UPDATE nodes " +
+            "SET path=?, type=?, name=?, leaf=?, value=?, depth=?, parent_path=? " +
+            "WHERE path=? AND type=?;";
+    // Inserts or updates the node only when it has a non-leaf parent (or is a non-leaf root) and
+    // wouldn't turn a stored group into a leaf, so a rejected save writes nothing.
+    private static final String SAVE_CONDITION = "((? = '' AND ? = FALSE) OR " +
+            "EXISTS (SELECT 1 FROM nodes p WHERE p.path=? AND p.type=? AND p.leaf=FALSE))";
+    private static final String UPSERT_H2 = "MERGE INTO nodes(path, type, name, leaf, value, depth, parent_path) " +
+            "KEY(path, type) " +
+            "SELECT ?, ?, ?, ?, ?, ?, ? FROM DUAL " +
+            "WHERE " + SAVE_CONDITION + " " +
+            "AND NOT (? = TRUE AND EXISTS (SELECT 1 FROM nodes o WHERE o.path=? AND o.type=? AND o.leaf=FALSE));";
+    private static final String UPSERT_POSTGRESQL = "INSERT INTO nodes(path, type, name, leaf, value, depth, parent_path) " +
+            "SELECT ?, ?, ?, ?, ?, ?, ? " +
+            "WHERE " + SAVE_CONDITION + " " +
+            "ON CONFLICT (path, type) DO UPDATE " +
+            "SET name=EXCLUDED.name, leaf=EXCLUDED.leaf, value=EXCLUDED.value, " +
+            "depth=EXCLUDED.depth, parent_path=EXCLUDED.parent_path " +
+            "WHERE NOT (nodes.leaf=FALSE AND EXCLUDED.leaf=TRUE);";
+    private static final String DELETE = "DELETE FROM nodes WHERE path=? AND type=?;";
+    private static final String DELETE_CASCADE = "DELETE FROM nodes " +
+            "WHERE type=? AND path>=? AND path<? AND (path=? OR path>=?);";
+    // Rewrites the subtree's path prefix in place. Every SET expression sees the row as it was before
+    // the update, so the moved node itself is recognized by its old path.
+    private static final String MOVE = "UPDATE nodes " +
+            "SET path=? || SUBSTRING(path, ?), " +
+            "parent_path=CASE WHEN path=? THEN ? ELSE ? || SUBSTRING(parent_path, ?) END, " +
+            "depth=depth + ? " +
+            "WHERE type=? AND path>=? AND path<? AND (path=? OR path>=?);";
+    // Copies the subtree with the same prefix rewrite as MOVE, leaving the original rows in place.
+    private static final String COPY = "INSERT INTO nodes(path, type, name, leaf, value, depth, parent_path) " +
+            "SELECT ? || SUBSTRING(path, ?), type, name, leaf, value, depth + ?, " +
+            "CASE WHEN path=? THEN ? ELSE ? || SUBSTRING(parent_path, ?) END " +
+            "FROM nodes WHERE type=? AND path>=? AND path<? AND (path=? OR path>=?);";
+    // Value replacements are staged in node_copy_values under an id of their own and applied by a single
+    // update, so every leaf is rewritten at most once, whatever the replacements map to.
+    private static final String STAGE_VALUE = "INSERT INTO node_copy_values(copy_id, original, replacement) " +
+            "VALUES (?, ?, ?);";
+    private static final String REPLACE_VALUES = "UPDATE nodes " +
+            "SET value=(SELECT m.replacement FROM node_copy_values m WHERE m.copy_id=? AND m.original=nodes.value) " +
+            "WHERE leaf=TRUE AND type=? AND path>=? AND path<? AND (path=? OR path>=?) " +
+            "AND value IN (SELECT m.original FROM node_copy_values m WHERE m.copy_id=?);";
+    private static final String UNSTAGE_VALUES = "DELETE FROM node_copy_values WHERE copy_id=?;";
+    // Locks the rows it returns, not the key range: nodes inserted into the subtree meanwhile are neither
+    // returned nor locked, but a range delete in the same transaction still removes them.
+    private static final String GET_ALL_PATH_FOR_UPDATE = "SELECT * FROM nodes " +
+            "WHERE type=? AND path>=? AND path<? AND (path=? OR path>=?) FOR UPDATE;";
+    private static final String DELETE_CASCADE_RETURNING = "DELETE FROM nodes " +
+            "WHERE type=? AND path>=? AND path<? AND (path=? OR path>=?) RETURNING *;";
+
+    /**
+     * Largest number of paths bound to a single IN list. Lists are padded up to the next power of two
+     * so only a handful of distinct statements end up in the statement cache.
+     */
+    static final int MAX_IN_LIST = 512;
+
+    // SQL states for objects that already exist: standard, then H2's and PostgreSQL's own
+    private static final Set<String> ALREADY_EXISTS = ImmutableSet.of(
+            "42S01", "42S11", "42S21",
+            "42101", "42111", "42121", "90035",
+            "42P07", "42701", "42710");
+
+    private static final String[] GET_EXACT_PATHS = exactPathStatements("SELECT * FROM nodes WHERE type=? AND path IN (%s);");
+
+    /**
+     * Number of rows sent per JDBC batch execution.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    public static ResultSet getExactPath(SqlConnection connection, String path, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_EXACT_PATH);
 
         statement.setString(1, path);
         statement.setString(2, type);
 
-        LOG.debug("Query getExactPath: " + statement.toString());
+        LOG.debug("Query getExactPath: {}", statement);
 
         return statement.executeQuery();
     }
 
-    public static ResultSet getChildrenPath(Connection connection, String path, String type) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(
-                "SELECT * FROM nodes WHERE path LIKE ? AND type=? AND depth=?;");
+    public static boolean exists(SqlConnection connection, String path, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(EXISTS_PATH);
 
-        statement.setString(1, path + DELIM + WILDCARD);
+        statement.setString(1, path);
         statement.setString(2, type);
-        statement.setInt(3, getDepth(path) + 1);
 
-        LOG.debug("Query getChildrenPath: " + statement.toString());
+        LOG.debug("Query exists: {}", statement);
+
+        try (ResultSet result = statement.executeQuery()) {
+            return result.next();
+        }
+    }
+
+    public static long countChildren(SqlConnection connection, String path, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(COUNT_CHILDREN);
+
+        statement.setString(1, type);
+        statement.setString(2, path);
+
+        LOG.debug("Query countChildren: {}", statement);
+
+        return count(statement);
+    }
+
+    public static long countDescendants(SqlConnection connection, String path, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(COUNT_DESCENDANTS);
+        String prefix = descendantPrefix(path);
+
+        statement.setString(1, type);
+        statement.setString(2, prefix);
+        statement.setString(3, successor(prefix));
+
+        LOG.debug("Query countDescendants: {}", statement);
+
+        return count(statement);
+    }
+
+    /**
+     * Fetch every node of the type whose path is one of the given paths. At most {@link #MAX_IN_LIST}
+     * paths can be fetched per call.
+     *
+     * @param connection
+     * @param paths
+     * @param type
+     * @return
+     * @throws SQLException
+     */
+    public static ResultSet getExactPaths(SqlConnection connection, List<String> paths, String type) throws SQLException {
+        PreparedStatement statement = prepareExactPaths(connection, GET_EXACT_PATHS, paths, type);
+
+        LOG.debug("Query getExactPaths: {}", statement);
 
         return statement.executeQuery();
     }
 
-    public static ResultSet getAllPath(Connection connection, String path, String type) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(
-                "SELECT * FROM nodes WHERE path LIKE ? AND type=?;");
+    public static ResultSet getChildrenPath(SqlConnection connection, String path, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_CHILDREN_PATH);
 
-        statement.setString(1, path + WILDCARD);
-        statement.setString(2, type);
+        statement.setString(1, type);
+        statement.setString(2, path);
 
-        LOG.debug("Query getAllPath: " + statement.toString());
+        LOG.debug("Query getChildrenPath: {}", statement);
 
         return statement.executeQuery();
     }
 
-    public static void create(Connection connection, Node node) throws SQLException {
-        String query = "INSERT INTO nodes(path, type, name, leaf, value, depth) " +
-                "VALUES (?, ?, ?, ?, ?, ?);";
-        PreparedStatement statement = connection.prepareStatement(query);
+    /**
+     * Fetch up to {@code limit} children of the path sorting after the given path, in path order.
+     *
+     * @param connection
+     * @param path
+     * @param type
+     * @param after
+     * @param limit
+     * @return
+     * @throws SQLException
+     */
+    public static ResultSet getChildrenPage(SqlConnection connection, String path, String type, String after, int limit) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_CHILDREN_PAGE);
+
+        statement.setString(1, type);
+        statement.setString(2, path);
+        statement.setString(3, after);
+        statement.setInt(4, limit);
+
+        LOG.debug("Query getChildrenPage: {}", statement);
 
-        statement.setString(1, node.getPath());
-        statement.setString(2, node.getType());
-        statement.setString(3, node.getName());
-        statement.setBoolean(4, node.getLeaf());
-        statement.setString(5, node.getValue());
-        statement.setInt(6, getDepth(node.getPath()));
+        return statement.executeQuery();
+    }
 
-        LOG.debug("Query create: " + statement.toString());
+    public static ResultSet getAllPath(SqlConnection connection, String path, String type) throws SQLException {
+        return getAllPath(connection, path, type, 0);
+    }
+
+    /**
+     * Fetch the subtree, letting the driver pull {@code fetchSize} rows per round trip instead of the
+     * whole result at once. A fetch size of 0 leaves it up to the driver.
+     *
+     * @param connection
+     * @param path
+     * @param type
+     * @param fetchSize
+     * @return
+     * @throws SQLException
+     */
+    public static ResultSet getAllPath(SqlConnection connection, String path, String type, int fetchSize) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_ALL_PATH);
+
+        bindSubtree(statement, path, type);
+        statement.setFetchSize(fetchSize);
+
+        LOG.debug("Query getAllPath: {}", statement);
+
+        return statement.executeQuery();
+    }
+
+    /**
+     * Fetch the subtree and lock the returned rows until the end of the transaction the connection is in.
+     * Nodes inserted into the subtree by others meanwhile are neither returned nor locked.
+     *
+     * @param connection
+     * @param path
+     * @param type
+     * @param fetchSize
+     * @return
+     * @throws SQLException
+     */
+    public static ResultSet getAllPathForUpdate(SqlConnection connection, String path, String type, int fetchSize) throws SQLException {
+        PreparedStatement statement = connection.prepare(GET_ALL_PATH_FOR_UPDATE);
+
+        bindSubtree(statement, path, type);
+        statement.setFetchSize(fetchSize);
+
+        LOG.debug("Query getAllPathForUpdate: {}", statement);
+
+        return statement.executeQuery();
+    }
+
+    /**
+     * Delete the subtree, returning the deleted rows. Only {@link SqlDialect#POSTGRESQL} supports
+     * RETURNING on deletes.
+     *
+     * @param connection
+     * @param path
+     * @param type
+     * @param fetchSize
+     * @return
+     * @throws SQLException
+     */
+    public static ResultSet deleteReturning(SqlConnection connection, String path, String type, int fetchSize) throws SQLException {
+        PreparedStatement statement = connection.prepare(DELETE_CASCADE_RETURNING);
+
+        bindSubtree(statement, path, type);
+        statement.setFetchSize(fetchSize);
+
+        LOG.debug("Query deleteReturning: {}", statement);
+
+        return statement.executeQuery();
+    }
+
+    public static void create(SqlConnection connection, Node node, ImmutablePath path) throws SQLException {
+        PreparedStatement statement = connection.prepare(CREATE);
+
+        bindCreate(statement, node, path);
+
+        LOG.debug("Query create: {}", statement);
 
         statement.executeUpdate();
     }
 
-    public static void update(Connection connection, Node node) throws SQLException {
-        String query = "UPDATE nodes " +
-                "SET path=?, type=?, name=?, leaf=?, value=?, depth=? " +
-                "WHERE path=? AND type=?;";
+    public static void update(SqlConnection connection, Node node, ImmutablePath path) throws SQLException {
+        PreparedStatement statement = connection.prepare(UPDATE);
+
+        bindUpdate(statement, node, path);
 
-        PreparedStatement statement = connection.prepareStatement(query);
+        LOG.debug("Query update: {}", statement);
 
+        statement.executeUpdate();
+    }
+
+    /**
+     * Insert or update the node in a single statement, checking its parent and that a group isn't
+     * turned into a leaf in the same statement. Only {@link SqlDialect}s that
+     * {@link SqlDialect#supportsUpsert() support upserts} can be used.
+     *
+     * @param connection
+     * @param node
+     * @param path the node's path
+     * @param dialect
+     * @return whether the node was written, false if it was rejected
+     * @throws SQLException
+     */
+    public static boolean upsert(SqlConnection connection, Node node, ImmutablePath path, SqlDialect dialect) throws SQLException {
+        PreparedStatement statement;
+
+        switch (dialect) {
+            case H2:
+                statement = connection.prepare(UPSERT_H2);
+                bindUpsert(statement, node, path);
+                statement.setBoolean(12, node.getLeaf());
+                statement.setString(13, node.getPath());
+                statement.setString(14, node.getType());
+                break;
+            case POSTGRESQL:
+                statement = connection.prepare(UPSERT_POSTGRESQL);
+                bindUpsert(statement, node, path);
+                break;
+            default:
+                throw new IllegalArgumentException("No upsert for dialect " + dialect + ".");
+        }
+
+        LOG.debug("Query upsert: {}", statement);
+
+        return statement.executeUpdate() > 0;
+    }
+
+    /**
+     * Insert all nodes through JDBC batches. Runs in whatever transaction the connection is in.
+     *
+     * @param connection
+     * @param nodes
+     * @throws SQLException
+     */
+    public static void createAll(SqlConnection connection, Iterable<Node> nodes) throws SQLException {
+        PreparedStatement statement = connection.prepare(CREATE);
+
+        executeBatch(statement, nodes, (bound, node) -> bindCreate(bound, node, ImmutablePath.from(node.getPath())));
+    }
+
+    /**
+     * Update all nodes through JDBC batches. Runs in whatever transaction the connection is in.
+     *
+     * @param connection
+     * @param nodes
+     * @throws SQLException
+     */
+    public static void updateAll(SqlConnection connection, Iterable<Node> nodes) throws SQLException {
+        PreparedStatement statement = connection.prepare(UPDATE);
+
+        executeBatch(statement, nodes, (bound, node) -> bindUpdate(bound, node, ImmutablePath.from(node.getPath())));
+    }
+
+    public static void delete(SqlConnection connection, String path, String type, boolean cascade) throws SQLException {
+        PreparedStatement statement;
+
+        if (cascade) {
+            statement = connection.prepare(DELETE_CASCADE);
+            bindSubtree(statement, path, type);
+        } else {
+            statement = connection.prepare(DELETE);
+            statement.setString(1, path);
+            statement.setString(2, type);
+        }
+
+        LOG.debug("Query delete: {}", statement);
+
+        statement.executeUpdate();
+    }
+
+    /**
+     * Move the subtree at {@code from} to {@code to}, rewriting paths, parent paths and depths with a
+     * single statement. Nothing is checked; runs in whatever transaction the connection is in.
+     *
+     * @param connection
+     * @param from
+     * @param to
+     * @param type
+     * @return number of nodes moved
+     * @throws SQLException
+     */
+    public static int move(SqlConnection connection, String from, String to, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(MOVE);
+        // SUBSTRING counts from 1, so this is the first character after the old prefix
+        int rest = from.length() + 1;
+
+        statement.setString(1, to);
+        statement.setInt(2, rest);
+        statement.setString(3, from);
+        statement.setString(4, getParentPath(to));
+        statement.setString(5, to);
+        statement.setInt(6, rest);
+        statement.setInt(7, getDepth(to) - getDepth(from));
+        bindSubtree(statement, 8, from, type);
+
+        LOG.debug("Query move: {}", statement);
+
+        return statement.executeUpdate();
+    }
+
+    /**
+     * Copy the subtree at {@code from} to {@code to} with a single statement. Nothing is checked; runs in
+     * whatever transaction the connection is in.
+     *
+     * @param connection
+     * @param from
+     * @param to
+     * @param type
+     * @return number of nodes copied
+     * @throws SQLException
+     */
+    public static int copy(SqlConnection connection, String from, String to, String type) throws SQLException {
+        PreparedStatement statement = connection.prepare(COPY);
+        int rest = from.length() + 1;
+
+        statement.setString(1, to);
+        statement.setInt(2, rest);
+        statement.setInt(3, getDepth(to) - getDepth(from));
+        statement.setString(4, from);
+        statement.setString(5, getParentPath(to));
+        statement.setString(6, to);
+        statement.setInt(7, rest);
+        bindSubtree(statement, 8, from, type);
+
+        LOG.debug("Query copy: {}", statement);
+
+        return statement.executeUpdate();
+    }
+
+    /**
+     * Replace the values of the leaves in the subtree. The replacements are staged through JDBC batches
+     * and applied with a single update, then dropped again, so they must run in a transaction for other
+     * connections never to see them.
+     *
+     * @param connection
+     * @param path
+     * @param type
+     * @param values
+     * @throws SQLException
+     */
+    public static void replaceValues(SqlConnection connection, String path, String type, Map<String, String> values) throws SQLException {
+        String copyId = UUID.randomUUID().toString();
+
+        executeBatch(connection.prepare(STAGE_VALUE), values.entrySet(), (bound, value) -> {
+            bound.setString(1, copyId);
+            bound.setString(2, value.getKey());
+            bound.setString(3, value.getValue());
+        });
+
+        PreparedStatement replace = connection.prepare(REPLACE_VALUES);
+        replace.setString(1, copyId);
+        bindSubtree(replace, 2, path, type);
+        replace.setString(7, copyId);
+
+        LOG.debug("Query replaceValues: {}", replace);
+        replace.executeUpdate();
+
+        PreparedStatement unstage = connection.prepare(UNSTAGE_VALUES);
+        unstage.setString(1, copyId);
+
+        LOG.debug("Query unstage values: {}", unstage);
+        unstage.executeUpdate();
+    }
+
+    public static void createTables(SqlConnection connection) throws SQLException {
+        try (Statement statement = connection.getConnection().createStatement()) {
+            executeDdl(statement, "CREATE TABLE IF NOT EXISTS nodes (\n" +
+                    "  path VARCHAR(1000) NOT NULL, \n" +
+                    "  type VARCHAR(1000) NOT NULL,\n" +
+                    "  name VARCHAR(1000) NOT NULL, \n" +
+                    "  leaf BOOLEAN,\n" +
+                    "  value VARCHAR(1000) NOT NULL,\n" +
+                    "  depth INTEGER NOT NULL,\n" +
+                    "  parent_path VARCHAR(1000),\n" +
+                    "  PRIMARY KEY (path, type)" +
+                    ");");
+            // tables created before parent_path existed get the column here and are backfilled
+            // by SqlTreeIndexMigrations#backfillParentPaths
+            executeDdl(statement, "ALTER TABLE nodes ADD COLUMN IF NOT EXISTS parent_path VARCHAR(1000);");
+            // value replacements staged by replaceValues, only ever seen by the transaction staging them
+            executeDdl(statement, "CREATE TABLE IF NOT EXISTS node_copy_values (\n" +
+                    "  copy_id VARCHAR(36) NOT NULL,\n" +
+                    "  original VARCHAR(1000) NOT NULL,\n" +
+                    "  replacement VARCHAR(1000) NOT NULL,\n" +
+                    "  PRIMARY KEY (copy_id, original)" +
+                    ");");
+            // serves both full child listings and keyset pages ordered by path
+            executeDdl(statement, "CREATE INDEX IF NOT EXISTS nodes_type_parent_path_path ON nodes (type, parent_path, path);");
+            // child listings used to range scan these indexes, the one above covers them
+            executeDdl(statement, "DROP INDEX IF EXISTS nodes_type_depth_path;");
+            executeDdl(statement, "DROP INDEX IF EXISTS nodes_type_parent_path;");
+        }
+    }
+
+    /**
+     * One statement per power of two up to {@link #MAX_IN_LIST}, with that many placeholders where the
+     * template holds {@code %s}.
+     *
+     * @param template
+     * @return
+     */
+    private static String[] exactPathStatements(String template) {
+        String[] statements = new String[Integer.numberOfTrailingZeros(MAX_IN_LIST) + 1];
+
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = String.format(template, String.join(", ", Collections.nCopies(1 << i, "?")));
+        }
+
+        return statements;
+    }
+
+    /**
+     * Prepare the statement of {@link #exactPathStatements(String)} fitting the paths, binding the type
+     * followed by the padded paths.
+     *
+     * @param connection
+     * @param statements
+     * @param paths
+     * @param type
+     * @return
+     * @throws SQLException
+     */
+    private static PreparedStatement prepareExactPaths(SqlConnection connection, String[] statements,
+                                                       List<String> paths, String type) throws SQLException {
+        if (paths.isEmpty() || paths.size() > MAX_IN_LIST) {
+            throw new IllegalArgumentException("Expected between 1 and " + MAX_IN_LIST + " paths, got " + paths.size() + ".");
+        }
+
+        int bucket = 32 - Integer.numberOfLeadingZeros(paths.size() - 1);
+        PreparedStatement statement = connection.prepare(statements[bucket]);
+
+        statement.setString(1, type);
+        for (int i = 0; i < 1 << bucket; i++) {
+            // pad with the last path, duplicates in an IN list don't change the result
+            statement.setString(i + 2, paths.get(Math.min(i, paths.size() - 1)));
+        }
+
+        return statement;
+    }
+
+    private static long count(PreparedStatement statement) throws SQLException {
+        try (ResultSet result = statement.executeQuery()) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    private static void bindSubtree(PreparedStatement statement, String path, String type) throws SQLException {
+        bindSubtree(statement, 1, path, type);
+    }
+
+    private static void bindSubtree(PreparedStatement statement, int first, String path, String type) throws SQLException {
+        String prefix = descendantPrefix(path);
+
+        statement.setString(first, type);
+        statement.setString(first + 1, path);
+        statement.setString(first + 2, successor(prefix));
+        statement.setString(first + 3, path);
+        statement.setString(first + 4, prefix);
+    }
+
+    private static void bindCreate(PreparedStatement statement, Node node, ImmutablePath path) throws SQLException {
         statement.setString(1, node.getPath());
         statement.setString(2, node.getType());
         statement.setString(3, node.getName());
         statement.setBoolean(4, node.getLeaf());
         statement.setString(5, node.getValue());
-        statement.setInt(6, getDepth(node.getPath()));
-        statement.setString(7, node.getPath());
-        statement.setString(8, node.getType());
+        statement.setInt(6, path.getDepth());
+        statement.setString(7, getParentPath(path));
+    }
 
-        LOG.debug("Query update: " + statement.toString());
+    private static void bindUpsert(PreparedStatement statement, Node node, ImmutablePath path) throws SQLException {
+        String parentPath = getParentPath(path);
 
-        statement.executeUpdate();
+        bindCreate(statement, node, path);
+        statement.setString(8, parentPath);
+        statement.setBoolean(9, node.getLeaf());
+        statement.setString(10, parentPath);
+        statement.setString(11, node.getType());
     }
 
-    public static void delete(Connection connection, String path, String type, boolean cascade) throws SQLException {
-        String query = "DELETE FROM nodes WHERE path=? AND type=?;";
+    private static void bindUpdate(PreparedStatement statement, Node node, ImmutablePath path) throws SQLException {
+        statement.setString(1, node.getPath());
+        statement.setString(2, node.getType());
+        statement.setString(3, node.getName());
+        statement.setBoolean(4, node.getLeaf());
+        statement.setString(5, node.getValue());
+        statement.setInt(6, path.getDepth());
+        statement.setString(7, getParentPath(path));
+        statement.setString(8, node.getPath());
+        statement.setString(9, node.getType());
+    }
 
-        if (cascade) {
-            path += WILDCARD;
-            query = "DELETE FROM nodes WHERE path LIKE ? AND type=?;";
+    static <T> void executeBatch(PreparedStatement statement, Iterable<T> items, Binder<T> binder) throws SQLException {
+        try {
+            int pending = 0;
+
+            for (T item : items) {
+                binder.bind(statement, item);
+                statement.addBatch();
+
+                if (++pending == BATCH_SIZE) {
+                    LOG.debug("Executing batch of {}: {}", pending, statement);
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+
+            if (pending > 0) {
+                LOG.debug("Executing batch of {}: {}", pending, statement);
+                statement.executeBatch();
+            }
+        } finally {
+            // cached statements must never carry a half built batch into their next use
+            statement.clearBatch();
         }
+    }
 
-        PreparedStatement statement = connection.prepareStatement(query);
-
-        statement.setString(1, path);
-        statement.setString(2, type);
+    /**
+     * Run a DDL statement, ignoring only failures saying the object it creates already exists, e.g. when
+     * another index created it first. Any other failure is thrown.
+     *
+     * @param statement
+     * @param sql
+     * @throws SQLException
+     */
+    static void executeDdl(Statement statement, String sql) throws SQLException {
+        try {
+            statement.executeUpdate(sql);
+        } catch (SQLException e) {
+            if (!ALREADY_EXISTS.contains(e.getSQLState())) {
+                throw e;
+            }
+
+            LOG.debug("Skipping DDL, already applied: {}", sql);
+        }
+    }
 
-        LOG.debug("Query delete: " + statement.toString());
+    /**
+     * Value of the parent_path column for a path. The root has no parent and is stored with an empty
+     * parent path, so it never shows up as a child of itself.
+     *
+     * @param path
+     * @return
+     */
+    static String getParentPath(String path) {
+        if (path.equals(ROOT)) {
+            return NO_PARENT;
+        }
 
-        statement.executeUpdate();
+        int last = path.lastIndexOf(DELIM);
+        return last == 0 ? ROOT : path.substring(0, last);
     }
 
-    public static void createTables(Connection connection) throws SQLException {
-        Statement statement = connection.createStatement();
-        statement.closeOnCompletion();
-
-        statement.executeUpdate("CREATE TABLE IF NOT EXISTS nodes (\n" +
-                "  path VARCHAR(1000) NOT NULL, \n" +
-                "  type VARCHAR(1000) NOT NULL,\n" +
-                "  name VARCHAR(1000) NOT NULL, \n" +
-                "  leaf BOOLEAN,\n" +
-                "  value VARCHAR(1000) NOT NULL,\n" +
-                "  depth INTEGER NOT NULL,\n" +
-                "  PRIMARY KEY (path, type)" +
-                ");");
-        statement.closeOnCompletion();
+    /**
+     * Value of the parent_path column for an already parsed path.
+     *
+     * @param path
+     * @return
+     */
+    static String getParentPath(ImmutablePath path) {
+        return path.isRoot() ? NO_PARENT : path.getParentPath();
     }
 
-    private static int getDepth(String path) {
+    static int getDepth(String path) {
         if (path.equals(ROOT)) {
             return 0;
         }
         return path.length() - path.replace(DELIM, "").length();
     }
 
+    @FunctionalInterface
+    interface Binder<T> {
+        void bind(PreparedStatement statement, T item) throws SQLException;
+    }
 }
@@ -0,0 +1,21 @@
+package tree.me.service.sql;
+
+/**
+ * How the {@link SqlTreeMeIndex} stores the shape of the tree.
+ */
+public enum SqlTreeLayout {
+
+    /**
+     * Subtrees are found through range scans over the encoded path. Nothing is stored besides the
+     * nodes table.
+     */
+    PATH,
+
+    /**
+     * Every node gets an integer ID and a node_closure table keeps one (ancestor, descendant, distance)
+     * row per ancestor of every node. Subtree reads and deletes become indexed integer joins, at the cost
+     * of depth + 1 closure rows per node. Switching an existing table back to {@link #PATH} requires
+     * dropping node_closure, as it is no longer maintained.
+     */
+    CLOSURE
+}
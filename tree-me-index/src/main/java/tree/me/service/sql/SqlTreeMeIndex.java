@@ -1,25 +1,57 @@
 package tree.me.service.sql;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
 import tree.me.core.index.Path;
 import tree.me.service.TreeMeIndex;
 import tree.me.service.exception.TreeMeDeleteException;
 import tree.me.service.exception.TreeMeGetException;
 import tree.me.service.exception.TreeMeSaveException;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.partition;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+import static java.util.Comparator.comparingInt;
+import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
+import static tree.me.core.index.NodePage.checkPageSize;
+import static tree.me.core.index.NodePage.decodeToken;
 import static tree.me.core.index.Path.ROOT;
+import static tree.me.core.index.Path.parentOf;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCopy;
+import static tree.me.service.TreeMeIndexRules.checkBeforeCreate;
+import static tree.me.service.TreeMeIndexRules.checkBeforeMove;
+import static tree.me.service.TreeMeIndexRules.checkBeforeUpdate;
 import static tree.me.service.sql.SqlTreeIndexStatements.*;
 
+/**
+ * {@link TreeMeIndex} over a SQL database. How subtrees are stored is chosen through the
+ * {@link SqlTreeLayout} when the index is built; all layouts keep one row per node in the nodes table.
+ * With the {@link SqlTreeLayout#PATH} layout and a {@link SqlDialect} supporting upserts, a single save
+ * checks and writes the node in one statement.
+ */
 public class SqlTreeMeIndex implements TreeMeIndex {
 
     private static final Logger LOG = LoggerFactory.getLogger(SqlTreeMeIndex.class);
@@ -30,39 +62,227 @@ public class SqlTreeMeIndex implements TreeMeIndex {
     private static final String LEAF_COLUMN = "leaf";
     private static final String VALUE_COLUMN = "value";
 
-    private Connection connection;
+    private static final int MIGRATION_BATCH_SIZE = 1000;
 
+    /**
+     * Rows pulled per round trip while streaming a subtree.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final SqlConnectionSource connections;
+    private final SqlTreeLayout layout;
+    private final SqlDialect dialect;
+    private final int fetchSize;
+
+    /**
+     * Index over a single shared {@link Connection}. Operations are serialized on the {@link Connection}.
+     *
+     * @param connection
+     * @throws SQLException
+     */
     public SqlTreeMeIndex(Connection connection) throws SQLException {
-        this.connection = connection;
-        connection.setAutoCommit(true);
+        this(share(connection), SqlTreeLayout.PATH, null, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Index over a {@link SqlConnectionPool} with default settings created from the {@link DataSource}.
+     *
+     * @param dataSource
+     */
+    public SqlTreeMeIndex(DataSource dataSource) {
+        this(SqlConnectionPool.builder().dataSource(dataSource).build());
+    }
+
+    /**
+     * Index over a {@link SqlConnectionPool}. Each operation borrows one {@link Connection} from the pool,
+     * allowing operations to run concurrently up to the size of the pool.
+     *
+     * @param pool
+     */
+    public SqlTreeMeIndex(SqlConnectionPool pool) {
+        this(pool, SqlTreeLayout.PATH, null, DEFAULT_FETCH_SIZE);
+    }
+
+    private SqlTreeMeIndex(SqlConnectionSource connections, SqlTreeLayout layout, SqlDialect dialect, int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Fetch size must not be negative.");
+        }
+
+        this.connections = connections;
+        this.layout = layout;
+        this.dialect = dialect != null ? dialect : detectDialect();
+        this.fetchSize = fetchSize;
         init();
     }
 
+    public SqlTreeLayout getLayout() {
+        return layout;
+    }
+
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Utilization of the underlying connections. An index over a single {@link Connection}
+     * reports itself as a pool of size one.
+     *
+     * @return
+     */
+    public SqlConnectionPoolStats getConnectionPoolStats() {
+        return connections.getStats();
+    }
+
+    /**
+     * Prepared statement cache hits and misses across all connections of this index.
+     *
+     * @return
+     */
+    public SqlStatementCacheStats getStatementCacheStats() {
+        return connections.getStatementCacheStats();
+    }
+
+    /**
+     * Fill in parent_path for rows written by an older version of the index. The first index created
+     * against a table runs this once; call it again once no older versions are writing to the table anymore.
+     *
+     * @return number of rows updated
+     */
+    public int backfillParentPaths() {
+        try {
+            return withConnection(connection -> SqlTreeIndexMigrations.backfillParentPaths(connection, MIGRATION_BATCH_SIZE));
+        } catch (SQLException e) {
+            LOG.error("Failed to backfill parent paths.", e);
+            throw new TreeMeSaveException(e);
+        }
+    }
+
+    /**
+     * Build the closure rows of nodes written without them, e.g. by an index still using
+     * {@link SqlTreeLayout#PATH}. The first {@link SqlTreeLayout#CLOSURE} index created against a table runs
+     * this once; call it again once no such writers are left.
+     *
+     * @return number of nodes linked
+     */
+    public int backfillClosure() {
+        try {
+            return withConnection(connection -> SqlTreeIndexMigrations.backfillClosure(connection, dialect, MIGRATION_BATCH_SIZE));
+        } catch (SQLException e) {
+            LOG.error("Failed to backfill closure.", e);
+            throw new TreeMeSaveException(e);
+        }
+    }
+
     @Override
     public Optional<Node> getByPath(Path path, String type) {
-        Node node = null;
-
         try {
-            ResultSet result = getExactPath(connection, path.getPath(), type);
-            List<Node> nodes = fromResultSet(result);
+            return withConnection(connection -> getByPath(connection, path.getPath(), type));
+        } catch (SQLException e) {
+            LOG.error("Failed to fetch node.", e);
+            throw new TreeMeGetException(e);
+        }
+    }
 
-            if (nodes.size() > 1) {
-                LOG.warn("Weird, looks like there is more than one node for this path." +
-                        " You may want to investigate what's going on here!");
-                ofNullable(nodes.get(0));
+    /**
+     * Fetches all {@link Node}s through IN lists of up to {@link SqlTreeIndexStatements#MAX_IN_LIST} paths,
+     * so most lookups take a single query.
+     *
+     * @param paths
+     * @param type
+     * @return
+     */
+    @Override
+    public Map<ImmutablePath, Node> getByPaths(Collection<Path> paths, String type) {
+        Map<String, Node> byPath = newHashMap();
+        Set<String> distinct = newLinkedHashSet();
+        paths.forEach(path -> distinct.add(path.getPath()));
+
+        if (!distinct.isEmpty()) {
+            try {
+                withConnection(connection -> {
+                    for (List<String> chunk : partition(newArrayList(distinct), MAX_IN_LIST)) {
+                        try (ResultSet result = getExactPaths(connection, chunk, type)) {
+                            fromResultSet(result).forEach(node -> byPath.put(node.getPath(), node));
+                        }
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                LOG.error("Failed to fetch nodes.", e);
+                throw new TreeMeGetException(e);
             }
+        }
 
-            if (nodes.size() == 0) {
-                return ofNullable(node);
-            }
+        Map<ImmutablePath, Node> found = newLinkedHashMap();
+        for (Path path : paths) {
+            Node node = byPath.get(path.getPath());
 
-            if (nodes.size() == 1) {
-                node = nodes.get(0);
+            if (node != null) {
+                found.put(path.toImmutable(), node);
             }
+        }
+
+        return found;
+    }
+
+    @Override
+    public boolean exists(Path path, String type) {
+        try {
+            return withConnection(connection -> checkPathExists(connection, path.getPath(), type));
         } catch (SQLException e) {
-            LOG.error("Failed to fetch node.", e);
+            LOG.error("Failed to check node exists.", e);
+            throw new TreeMeGetException(e);
+        }
+    }
+
+    @Override
+    public long countChildren(Path path, String type) {
+        try {
+            return withConnection(connection -> SqlTreeIndexStatements.countChildren(connection, path.getPath(), type));
+        } catch (SQLException e) {
+            LOG.error("Failed to count children.", e);
             throw new TreeMeGetException(e);
         }
+    }
+
+    /**
+     * Counts a single range of the primary key, for both layouts; the closure table isn't needed for it.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
+    @Override
+    public long countDescendants(Path path, String type) {
+        try {
+            return withConnection(connection -> SqlTreeIndexStatements.countDescendants(connection, path.getPath(), type));
+        } catch (SQLException e) {
+            LOG.error("Failed to count descendants.", e);
+            throw new TreeMeGetException(e);
+        }
+    }
+
+    private Optional<Node> getByPath(SqlConnection connection, String path, String type) throws SQLException {
+        Node node = null;
+        List<Node> nodes;
+
+        try (ResultSet result = getExactPath(connection, path, type)) {
+            nodes = fromResultSet(result);
+        }
+
+        if (nodes.size() > 1) {
+            LOG.warn("Weird, looks like there is more than one node for this path." +
+                    " You may want to investigate what's going on here!");
+            ofNullable(nodes.get(0));
+        }
+
+        if (nodes.size() == 0) {
+            return ofNullable(node);
+        }
+
+        if (nodes.size() == 1) {
+            node = nodes.get(0);
+        }
 
         return ofNullable(node);
     }
@@ -70,55 +290,129 @@ public class SqlTreeMeIndex implements TreeMeIndex {
     @Override
     public Optional<Iterable<Node>> getChildrenByPath(Path path, String type) {
         try {
-            if(!checkPathExists(path, type)) {
-                return ofNullable(null);
-            }
+            return withConnection(connection -> {
+                if (!checkPathExists(connection, path.getPath(), type)) {
+                    return ofNullable(null);
+                }
 
-            return ofNullable(fromResultSet(getChildrenPath(connection, path.getPath(), type)));
+                try (ResultSet result = getChildrenPath(connection, path.getPath(), type)) {
+                    return ofNullable(fromResultSet(result));
+                }
+            });
         } catch (SQLException e) {
             LOG.error("Failed to fetch children for path " + path.getPath() + ".", e);
             throw new TreeMeGetException(e);
         }
     }
 
+    @Override
+    public Optional<NodePage> getChildrenByPath(Path path, String type, int pageSize, String token) {
+        checkPageSize(pageSize);
+        String after = decodeToken(token);
+
+        try {
+            return withConnection(connection -> {
+                if (!checkPathExists(connection, path.getPath(), type)) {
+                    return ofNullable(null);
+                }
+
+                // one extra row tells whether another page follows
+                try (ResultSet result = getChildrenPage(connection, path.getPath(), type, after, pageSize + 1)) {
+                    return ofNullable(NodePage.of(fromResultSet(result), pageSize));
+                }
+            });
+        } catch (SQLException e) {
+            LOG.error("Failed to fetch children page for path " + path.getPath() + ".", e);
+            throw new TreeMeGetException(e);
+        }
+    }
+
     @Override
     public Optional<Iterable<Node>> getAllByPath(Path path, String type) {
         try {
-            if(!checkPathExists(path, type)) {
-                return ofNullable(null);
-            }
+            return withConnection(connection -> {
+                if (!checkPathExists(connection, path.getPath(), type)) {
+                    return ofNullable(null);
+                }
 
-            return ofNullable(fromResultSet(getAllPath(connection, path.getPath(), type)));
+                try (ResultSet result = layout == SqlTreeLayout.CLOSURE ?
+                        SqlClosureTreeIndexStatements.getAllPath(connection, path.getPath(), type) :
+                        getAllPath(connection, path.getPath(), type)) {
+                    return ofNullable(fromResultSet(result));
+                }
+            });
         } catch (SQLException e) {
             LOG.error("Failed to fetch all for path " + path.getPath() + ".", e);
             throw new TreeMeGetException(e);
         }
     }
 
+    /**
+     * Stream the subtree straight off a database cursor, decoding {@link Node}s as they are consumed and
+     * pulling {@code fetchSize} rows per round trip. The stream holds on to its {@link Connection} until it
+     * is closed; on an index over a single {@link Connection} don't call back into the index before that.
+     *
+     * @param path
+     * @param type
+     * @return
+     */
     @Override
-    public void save(Node node) {
+    public Optional<Stream<Node>> streamAllByPath(Path path, String type) {
+        SqlConnection connection = null;
+        ResultSet result = null;
+        boolean streaming = false;
+
         try {
-            Optional<Node> previous = getByPath(Path.from(node.getPath()), node.getType());
+            connection = connections.borrow();
 
-            if (previous.isPresent()) {
-                checkBeforeUpdate(previous.get(), node);
-                update(connection, node);
-            } else {
-                Path path = Path.from(node.getPath());
-
-                if (path.isRoot()) {
-                    if (node.getLeaf()) {
-                        String msg = "Root nodes can't be leaf nodes.";
-                        LOG.error(msg);
-                        throw new TreeMeSaveException(msg);
-                    } else {
-                        create(connection, node);
-                    }
-                } else {
-                    checkParentExists(path, node.getType());
-                    create(connection, node);
-                }
+            if (!checkPathExists(connection, path.getPath(), type)) {
+                return ofNullable(null);
             }
+
+            // Drivers like PostgreSQL only stream results with a fetch size inside a transaction.
+            connection.getConnection().setAutoCommit(false);
+            result = layout == SqlTreeLayout.CLOSURE ?
+                    SqlClosureTreeIndexStatements.getAllPath(connection, path.getPath(), type, fetchSize) :
+                    getAllPath(connection, path.getPath(), type, fetchSize);
+
+            SqlConnection borrowed = connection;
+            ResultSet rows = result;
+            Stream<Node> nodes = StreamSupport.stream(new ResultSetSpliterator(rows), false)
+                    .onClose(() -> closeStream(borrowed, rows));
+
+            streaming = true;
+            return ofNullable(nodes);
+        } catch (SQLException e) {
+            LOG.error("Failed to stream all for path " + path.getPath() + ".", e);
+            throw new TreeMeGetException(e);
+        } finally {
+            if (!streaming) {
+                closeStream(connection, result);
+            }
+        }
+    }
+
+    private void closeStream(SqlConnection connection, ResultSet result) {
+        if (result != null) {
+            try {
+                result.close();
+            } catch (SQLException e) {
+                LOG.warn("Failed to close result set.", e);
+            }
+        }
+
+        if (connection != null) {
+            connections.release(connection);
+        }
+    }
+
+    @Override
+    public void save(Node node) {
+        try {
+            withConnection(connection -> {
+                save(connection, node);
+                return null;
+            });
             LOG.debug("Saved node!");
         } catch (SQLException e) {
             LOG.error("Failed to save node.", e);
@@ -126,93 +420,592 @@ public class SqlTreeMeIndex implements TreeMeIndex {
         }
     }
 
+    private void save(SqlConnection connection, Node node) throws SQLException {
+        // parsed once, the statements bind its depth and parent
+        ImmutablePath path = ImmutablePath.from(node.getPath());
+
+        // closure rows are only added for new nodes, which an upsert can't tell apart from updates
+        if (dialect.supportsUpsert() && layout == SqlTreeLayout.PATH) {
+            if (!upsert(connection, node, path, dialect)) {
+                rejectSave(connection, node, path);
+            }
+            return;
+        }
+
+        Optional<Node> previous = getByPath(connection, node.getPath(), node.getType());
+
+        if (previous.isPresent()) {
+            checkBeforeUpdate(previous.get(), node);
+            update(connection, node, path);
+        } else {
+            Optional<Node> parent = path.isRoot() ?
+                    ofNullable(null) :
+                    getByPath(connection, path.getParentPath(), node.getType());
+
+            checkBeforeCreate(node, parent);
+            insert(connection, node, path);
+        }
+    }
+
+    /**
+     * Works out why an upsert wrote nothing, so rejected saves fail with the same messages as the
+     * checks made before writing. Only runs once a save has already been rejected.
+     *
+     * @param connection
+     * @param node
+     * @param path
+     * @throws SQLException
+     */
+    private void rejectSave(SqlConnection connection, Node node, ImmutablePath path) throws SQLException {
+        Optional<Node> previous = getByPath(connection, node.getPath(), node.getType());
+
+        if (previous.isPresent()) {
+            checkBeforeUpdate(previous.get(), node);
+        }
+
+        Optional<Node> parent = path.isRoot() ?
+                ofNullable(null) :
+                getByPath(connection, path.getParentPath(), node.getType());
+
+        checkBeforeCreate(node, parent);
+
+        String msg = "Node at path: " + node.getPath() + " was rejected, its parent changed while saving.";
+        LOG.error(msg);
+        throw new TreeMeSaveException(msg);
+    }
+
+    private void insert(SqlConnection connection, Node node, ImmutablePath path) throws SQLException {
+        if (layout == SqlTreeLayout.CLOSURE) {
+            connection.getConnection().setAutoCommit(false);
+            create(connection, node, path);
+            SqlClosureTreeIndexStatements.link(connection, node);
+            connection.getConnection().commit();
+        } else {
+            create(connection, node, path);
+        }
+    }
+
     @Override
-    public void deleteByPath(Path path, String type) {
+    public void saveAll(Iterable<Node> nodes) {
+        List<Node> sorted = newArrayList(nodes);
+
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        // parents sort ahead of their children, so each node can be checked against the ones before it
+        sorted.sort(comparingInt(node -> getDepth(node.getPath())));
+
         try {
-            Optional<Node> nodeOpt = getByPath(path, type);
+            withConnection(connection -> {
+                saveAll(connection, sorted);
+                return null;
+            });
+            LOG.debug("Saved {} nodes!", sorted.size());
+        } catch (SQLException e) {
+            LOG.error("Failed to save nodes.", e);
+            throw new TreeMeSaveException(e);
+        }
+    }
+
+    private void saveAll(SqlConnection connection, List<Node> nodes) throws SQLException {
+        Table<String, String, Node> known = getExistingAndParents(connection, nodes);
+        List<Node> creates = newArrayList();
+        List<Node> updates = newArrayList();
+
+        for (Node node : nodes) {
+            Node previous = known.get(node.getType(), node.getPath());
+
+            if (previous != null) {
+                checkBeforeUpdate(previous, node);
+                updates.add(node);
+            } else {
+                Node parent = node.getPath().equals(ROOT) ?
+                        null :
+                        known.get(node.getType(), parentOf(node.getPath()));
 
-            if (!nodeOpt.isPresent()) {
-                return;
+                checkBeforeCreate(node, ofNullable(parent));
+                creates.add(node);
             }
 
-            boolean cascade = true;
+            known.put(node.getType(), node.getPath(), node);
+        }
+
+        // inserts run first so batch updates of nodes created earlier in the same batch find their rows
+        connection.getConnection().setAutoCommit(false);
+        createAll(connection, creates);
+        if (layout == SqlTreeLayout.CLOSURE) {
+            SqlClosureTreeIndexStatements.linkAll(connection, creates);
+        }
+        updateAll(connection, updates);
+        connection.getConnection().commit();
+    }
 
-            if (nodeOpt.get().getLeaf()) {
-                cascade = false;
+    /**
+     * Looks up, in as few queries as possible, every stored node that is either one of the nodes
+     * or the parent of one of the nodes.
+     *
+     * @param connection
+     * @param nodes
+     * @return
+     * @throws SQLException
+     */
+    private Table<String, String, Node> getExistingAndParents(SqlConnection connection, List<Node> nodes) throws SQLException {
+        Map<String, Set<String>> pathsByType = newLinkedHashMap();
+
+        for (Node node : nodes) {
+            Set<String> paths = pathsByType.computeIfAbsent(node.getType(), type -> newLinkedHashSet());
+            paths.add(node.getPath());
+
+            if (!node.getPath().equals(ROOT)) {
+                paths.add(parentOf(node.getPath()));
             }
+        }
+
+        Table<String, String, Node> existing = HashBasedTable.create();
 
-            delete(connection, path.getPath(), type, cascade);
+        for (Map.Entry<String, Set<String>> entry : pathsByType.entrySet()) {
+            for (List<String> chunk : partition(newArrayList(entry.getValue()), MAX_IN_LIST)) {
+                try (ResultSet result = getExactPaths(connection, chunk, entry.getKey())) {
+                    fromResultSet(result).forEach(node -> existing.put(node.getType(), node.getPath(), node));
+                }
+            }
+        }
+
+        return existing;
+    }
+
+    @Override
+    public void deleteByPath(Path path, String type) {
+        try {
+            withConnection(connection -> {
+                if (layout == SqlTreeLayout.CLOSURE) {
+                    Optional<Long> id = SqlClosureTreeIndexStatements.getId(connection, path.getPath(), type);
+
+                    if (id.isPresent()) {
+                        connection.getConnection().setAutoCommit(false);
+                        SqlClosureTreeIndexStatements.delete(connection, id.get());
+                        connection.getConnection().commit();
+                    }
+                    return null;
+                }
+
+                Optional<Node> nodeOpt = getByPath(connection, path.getPath(), type);
+
+                if (!nodeOpt.isPresent()) {
+                    return null;
+                }
+
+                boolean cascade = true;
+
+                if (nodeOpt.get().getLeaf()) {
+                    cascade = false;
+                }
+
+                delete(connection, path.getPath(), type, cascade);
+                return null;
+            });
         } catch (SQLException e) {
             LOG.error("Failed to delete node.", e);
             throw new TreeMeDeleteException(e);
         }
     }
 
-    private void checkBeforeUpdate(Node previous, Node latest) {
-        // Ensure the Node to be save is not converting from non-leaf to a leaf.
-        // This would cause inconsistencies in the tree.
-        if (!previous.getLeaf() && latest.getLeaf()) {
-            String msg = "You're trying to convert a non-leaf to a leaf. " +
-                    "This is not allowed to prevent breaking the tree links.";
-            LOG.error(msg);
-            throw new TreeMeSaveException(msg);
+    /**
+     * Moves the subtree with a single UPDATE rewriting path prefixes, parent paths and depths, in one
+     * transaction with the checks and, for {@link SqlTreeLayout#CLOSURE}, re-linking the subtree.
+     *
+     * @param from
+     * @param to
+     * @param type
+     */
+    @Override
+    public void move(Path from, Path to, String type) {
+        String source = from.getPath();
+        String target = to.getPath();
+
+        try {
+            int moved = withConnection(connection -> {
+                connection.getConnection().setAutoCommit(false);
+
+                checkBeforeMove(source, target,
+                        getByPath(connection, source, type),
+                        getByPath(connection, target, type),
+                        getByPath(connection, parentOf(target), type));
+
+                if (layout == SqlTreeLayout.CLOSURE) {
+                    long id = SqlClosureTreeIndexStatements.getId(connection, source, type).get();
+                    long parentId = SqlClosureTreeIndexStatements.getId(connection, parentOf(target), type).get();
+                    SqlClosureTreeIndexStatements.relink(connection, id, parentId);
+                }
+
+                int count = SqlTreeIndexStatements.move(connection, source, target, type);
+                connection.getConnection().commit();
+                return count;
+            });
+            LOG.debug("Moved {} nodes!", moved);
+        } catch (SQLException e) {
+            LOG.error("Failed to move nodes.", e);
+            throw new TreeMeSaveException(e);
         }
+    }
 
-        // Ensure the root Node type does not get changed.
-        if (latest.getPath().equals(ROOT)) {
-            if (!previous.getType().equals(latest.getType())) {
-                String msg = "You're trying to convert change name of a type. This is not allowed.";
-                LOG.error(msg);
-                throw new TreeMeSaveException(msg);
-            }
+    /**
+     * Copies the subtree with a single INSERT ... SELECT rewriting path prefixes, in one transaction with
+     * the checks, the new values and, for {@link SqlTreeLayout#CLOSURE}, linking the copies.
+     *
+     * @param from
+     * @param to
+     * @param type
+     * @param values
+     */
+    @Override
+    public void copy(Path from, Path to, String type, Map<String, String> values) {
+        String source = from.getPath();
+        String target = to.getPath();
+
+        try {
+            int copied = withConnection(connection -> {
+                connection.getConnection().setAutoCommit(false);
+
+                checkBeforeCopy(source, target,
+                        getByPath(connection, source, type),
+                        getByPath(connection, target, type),
+                        getByPath(connection, parentOf(target), type));
+
+                int count = SqlTreeIndexStatements.copy(connection, source, target, type);
+
+                if (layout == SqlTreeLayout.CLOSURE) {
+                    long id = SqlClosureTreeIndexStatements.getId(connection, source, type).get();
+                    long parentId = SqlClosureTreeIndexStatements.getId(connection, parentOf(target), type).get();
+                    SqlClosureTreeIndexStatements.linkCopy(connection, source, target, type, id, parentId);
+                }
+
+                if (!values.isEmpty()) {
+                    replaceValues(connection, target, type, values);
+                }
+
+                connection.getConnection().commit();
+                return count;
+            });
+            LOG.debug("Copied {} nodes!", copied);
+        } catch (SQLException e) {
+            LOG.error("Failed to copy nodes.", e);
+            throw new TreeMeSaveException(e);
         }
     }
 
-    private boolean checkPathExists(Path path, String type) throws SQLException {
-        return getExactPath(connection, path.getPath(), type).next();
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type) {
+        return deleteAndReturnByPath(path, type, () -> {
+        });
     }
 
-    private void checkParentExists(Path path, String type) {
-        Path parentPath = Path.from(path.getParentPath());
-        Optional<Node> parent = getByPath(parentPath, type);
+    /**
+     * Deletes the subtree in a single transaction while streaming its rows. PostgreSQL deletes and returns
+     * the rows in one statement. Elsewhere the rows are read, with a lock on them where the layout allows,
+     * and the whole subtree is deleted with one statement once the last row has been read, the same range
+     * for every dialect, so no node is left behind without its parent. Nodes added to the subtree while
+     * streaming are deleted along with it without being streamed. The transaction commits once the stream
+     * is exhausted and {@code beforeCommit} returned, and rolls back if either fails or the stream is closed
+     * before that. {@code beforeCommit} runs with the transaction open and the streamed rows locked, so
+     * keep it short.
+     *
+     * @param path
+     * @param type
+     * @param beforeCommit
+     * @return
+     */
+    @Override
+    public Optional<Stream<Node>> deleteAndReturnByPath(Path path, String type, Runnable beforeCommit) {
+        SqlConnection connection = null;
+        ResultSet result = null;
+        boolean streaming = false;
 
-        if (!parent.isPresent()) {
-            String msg = "Parent of path: " + path.getPath() +
-                    " doesn't exist. Searched for parent: " + parentPath.getPath() + ".";
-            LOG.error(msg);
-            throw new TreeMeSaveException(msg);
-        }
+        try {
+            connection = connections.borrow();
+            connection.getConnection().setAutoCommit(false);
+
+            String deleted = path.getPath();
+            SqlOperation<Void> delete;
+
+            if (layout == SqlTreeLayout.CLOSURE) {
+                Optional<Long> id = SqlClosureTreeIndexStatements.getId(connection, deleted, type);
+
+                if (!id.isPresent()) {
+                    return ofNullable(null);
+                }
+
+                result = SqlClosureTreeIndexStatements.getAllPath(connection, deleted, type, fetchSize);
+                delete = locked -> {
+                    SqlClosureTreeIndexStatements.delete(locked, id.get());
+                    return null;
+                };
+            } else if (dialect == SqlDialect.POSTGRESQL) {
+                // the statement already deleted the range it returns
+                result = deleteReturning(connection, deleted, type, fetchSize);
+                delete = locked -> null;
+            } else {
+                result = getAllPathForUpdate(connection, deleted, type, fetchSize);
+                delete = locked -> {
+                    delete(locked, deleted, type, true);
+                    return null;
+                };
+            }
+
+            // the first row is read up front, an empty subtree means there is no node at the path
+            if (!result.next()) {
+                return ofNullable(null);
+            }
 
-        if (parent.get().getLeaf()) {
-            String msg = "Parent is a leaf node. Unable to save node.";
-            LOG.error(msg);
-            throw new TreeMeSaveException(msg);
+            SqlConnection borrowed = connection;
+            ResultSet rows = result;
+            Stream<Node> nodes = StreamSupport.stream(new DeletingSpliterator(borrowed, rows, delete, beforeCommit), false)
+                    .onClose(() -> closeStream(borrowed, rows));
+
+            streaming = true;
+            return ofNullable(nodes);
+        } catch (SQLException e) {
+            LOG.error("Failed to delete all for path " + path.getPath() + ".", e);
+            throw new TreeMeDeleteException(e);
+        } finally {
+            if (!streaming) {
+                closeStream(connection, result);
+            }
         }
     }
 
-    private List<Node> fromResultSet(ResultSet result) throws SQLException {
+    private boolean checkPathExists(SqlConnection connection, String path, String type) throws SQLException {
+        return SqlTreeIndexStatements.exists(connection, path, type);
+    }
+
+    private static List<Node> fromResultSet(ResultSet result) throws SQLException {
         List<Node> nodes = newArrayList();
 
         while (result.next()) {
-            nodes.add(Node.builder()
-                    .path(result.getString(PATH_COLUMN))
-                    .type(result.getString(TYPE_COLUMN))
-                    .name(result.getString(NAME_COLUMN))
-                    .leaf(result.getBoolean(LEAF_COLUMN))
-                    .value(result.getString(VALUE_COLUMN))
-                    .build());
+            nodes.add(fromRow(result));
         }
 
         return nodes;
     }
 
+    private static Node fromRow(ResultSet result) throws SQLException {
+        return Node.builder()
+                .path(result.getString(PATH_COLUMN))
+                .type(result.getString(TYPE_COLUMN))
+                .name(result.getString(NAME_COLUMN))
+                .leaf(result.getBoolean(LEAF_COLUMN))
+                .value(result.getString(VALUE_COLUMN))
+                .build();
+    }
+
+    /**
+     * Decodes one row per advance, so only the rows the driver has fetched are held in memory.
+     */
+    private static class ResultSetSpliterator extends Spliterators.AbstractSpliterator<Node> {
+        private final ResultSet result;
+
+        private ResultSetSpliterator(ResultSet result) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.result = result;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Node> action) {
+            try {
+                if (!result.next()) {
+                    return false;
+                }
+
+                action.accept(fromRow(result));
+                return true;
+            } catch (SQLException e) {
+                LOG.error("Failed to read next streamed node.", e);
+                throw new TreeMeGetException(e);
+            }
+        }
+    }
+
+    /**
+     * Streams the rows of a subtree being deleted, starting at the row the {@link ResultSet} is on. Once
+     * the last row has been read, the callback runs, the subtree is deleted and the transaction commits;
+     * until then, releasing the connection rolls everything back.
+     */
+    private static class DeletingSpliterator extends Spliterators.AbstractSpliterator<Node> {
+        private final SqlConnection connection;
+        private final ResultSet result;
+        private final SqlOperation<Void> delete;
+        private final Runnable beforeCommit;
+        private boolean positioned = true;
+        private boolean exhausted;
+
+        private DeletingSpliterator(SqlConnection connection, ResultSet result, SqlOperation<Void> delete, Runnable beforeCommit) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.connection = connection;
+            this.result = result;
+            this.delete = delete;
+            this.beforeCommit = beforeCommit;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Node> action) {
+            if (exhausted) {
+                return false;
+            }
+
+            try {
+                if (positioned || result.next()) {
+                    positioned = false;
+                    action.accept(fromRow(result));
+                    return true;
+                }
+
+                // a failing callback leaves the transaction open, closing the stream rolls it back
+                exhausted = true;
+                beforeCommit.run();
+                delete.apply(connection);
+                connection.getConnection().commit();
+                LOG.debug("Deleted streamed nodes!");
+                return false;
+            } catch (SQLException e) {
+                LOG.error("Failed to delete streamed nodes.", e);
+                throw new TreeMeDeleteException(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the operation against a single borrowed {@link SqlConnection}, releasing it afterwards.
+     *
+     * @param operation
+     * @param <R>
+     * @return
+     * @throws SQLException
+     */
+    private <R> R withConnection(SqlOperation<R> operation) throws SQLException {
+        SqlConnection connection = connections.borrow();
+
+        try {
+            return operation.apply(connection);
+        } finally {
+            connections.release(connection);
+        }
+    }
+
+    private SqlDialect detectDialect() {
+        try {
+            return withConnection(connection -> SqlDialect.of(connection.getConnection()));
+        } catch (SQLException e) {
+            LOG.warn("Failed to detect SQL dialect, saves will not use upserts.", e);
+            return SqlDialect.GENERIC;
+        }
+    }
+
     private void init() {
         try {
             LOG.info("Initializing SQL tables...");
-            createTables(connection);
+            withConnection(connection -> {
+                createTables(connection);
+                SqlTreeIndexMigrations.createTables(connection);
+                SqlTreeIndexMigrations.applyOnce(connection, SqlTreeIndexMigrations.PARENT_PATHS,
+                        migrating -> SqlTreeIndexMigrations.backfillParentPaths(migrating, MIGRATION_BATCH_SIZE));
+
+                if (layout == SqlTreeLayout.CLOSURE) {
+                    SqlClosureTreeIndexStatements.createTables(connection, dialect);
+                    SqlTreeIndexMigrations.applyOnce(connection, SqlTreeIndexMigrations.CLOSURE,
+                            migrating -> SqlTreeIndexMigrations.backfillClosure(migrating, dialect, MIGRATION_BATCH_SIZE));
+                }
+                return null;
+            });
             LOG.info("..Initialized SQL tables!");
         } catch (SQLException e) {
-            LOG.error("Failed to initialize database.", e.getMessage());
+            LOG.error("Failed to initialize database.", e);
+            throw new IllegalStateException("Failed to initialize database.", e);
+        }
+    }
+
+    private static SqlConnectionSource share(Connection connection) throws SQLException {
+        connection.setAutoCommit(true);
+        return new SharedSqlConnectionSource(connection, SqlStatementCache.DEFAULT_CAPACITY);
+    }
+
+    @FunctionalInterface
+    private interface SqlOperation<R> {
+        R apply(SqlConnection connection) throws SQLException;
+    }
+
+    public static SqlTreeMeIndexBuilder builder() {
+        return new SqlTreeMeIndexBuilder();
+    }
+
+    /**
+     * Builds a {@link SqlTreeMeIndex} over exactly one of a {@link Connection}, a {@link DataSource}
+     * or a {@link SqlConnectionPool}.
+     */
+    public static class SqlTreeMeIndexBuilder {
+        private Connection connection;
+        private DataSource dataSource;
+        private SqlConnectionPool pool;
+        private SqlTreeLayout layout = SqlTreeLayout.PATH;
+        private SqlDialect dialect;
+        private int fetchSize = DEFAULT_FETCH_SIZE;
+
+        public SqlTreeMeIndexBuilder() {
+        }
+
+        public SqlTreeMeIndexBuilder connection(Connection connection) {
+            this.connection = connection;
+            return this;
+        }
+
+        public SqlTreeMeIndexBuilder dataSource(DataSource dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
+        public SqlTreeMeIndexBuilder pool(SqlConnectionPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public SqlTreeMeIndexBuilder layout(SqlTreeLayout layout) {
+            this.layout = layout;
+            return this;
+        }
+
+        /**
+         * Dialect of the database, detected from the connection when not set.
+         *
+         * @param dialect
+         * @return
+         */
+        public SqlTreeMeIndexBuilder dialect(SqlDialect dialect) {
+            this.dialect = dialect;
+            return this;
+        }
+
+        public SqlTreeMeIndexBuilder fetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        public SqlTreeMeIndex build() throws SQLException {
+            requireNonNull(layout);
+
+            int sources = (connection == null ? 0 : 1) + (dataSource == null ? 0 : 1) + (pool == null ? 0 : 1);
+            if (sources != 1) {
+                throw new IllegalStateException("Exactly one of connection, dataSource or pool must be set.");
+            }
+
+            if (connection != null) {
+                return new SqlTreeMeIndex(share(connection), layout, dialect, fetchSize);
+            }
+
+            if (dataSource != null) {
+                return new SqlTreeMeIndex(SqlConnectionPool.builder().dataSource(dataSource).build(), layout, dialect, fetchSize);
+            }
+
+            return new SqlTreeMeIndex(pool, layout, dialect, fetchSize);
         }
     }
 }
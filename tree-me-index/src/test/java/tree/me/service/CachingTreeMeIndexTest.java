@@ -0,0 +1,162 @@
+package tree.me.service;
+
+import com.google.common.cache.CacheStats;
+import org.junit.Before;
+import org.junit.Test;
+import tree.me.core.index.ImmutablePath;
+import tree.me.core.index.Node;
+import tree.me.core.index.Path;
+import tree.me.service.cache.CachingTreeMeIndex;
+import tree.me.service.exception.TreeMeSaveException;
+import tree.me.service.memory.InMemoryTreeMeIndex;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.*;
+
+public class CachingTreeMeIndexTest {
+
+    private static final String PATH_DELIM = "/";
+    private static final String TYPE = "ATT&CK";
+
+    private CachingTreeMeIndex treeMeIndex;
+
+    @Before
+    public void before() {
+        treeMeIndex = CachingTreeMeIndex.builder()
+                .delegate(new InMemoryTreeMeIndex())
+                .maximumSize(100)
+                .build();
+
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/nested", false));
+        treeMeIndex.save(createNode("/group/nested/resource", true));
+    }
+
+    @Test
+    public void testRepeatedReadsHitCache() {
+        Path group = path("/group");
+
+        treeMeIndex.getByPath(group, TYPE);
+        treeMeIndex.getByPath(group, TYPE);
+        treeMeIndex.getAllByPath(group, TYPE);
+        treeMeIndex.getAllByPath(group, TYPE);
+
+        CacheStats stats = treeMeIndex.getStats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(2, stats.missCount());
+    }
+
+    @Test
+    public void testGetByPathsMixesCachedAndLoaded() {
+        treeMeIndex.getByPath(path("/group"), TYPE);
+
+        Map<ImmutablePath, Node> found = treeMeIndex.getByPaths(
+                newArrayList(path("/group/nested"), path("/group"), path("/missing")), TYPE);
+
+        assertEquals(newArrayList(path("/group/nested").toImmutable(), path("/group").toImmutable()), newArrayList(found.keySet()));
+        assertEquals(createNode("/group", false), found.get(path("/group").toImmutable()));
+
+        treeMeIndex.getByPath(path("/group/nested"), TYPE);
+        treeMeIndex.getByPath(path("/missing"), TYPE);
+
+        CacheStats stats = treeMeIndex.getStats();
+        assertEquals(3, stats.hitCount());
+        assertEquals(3, stats.missCount());
+    }
+
+    @Test
+    public void testWriteDuringGetByPathsIsNotCachedOver() {
+        AtomicReference<CachingTreeMeIndex> caching = new AtomicReference<>();
+        InMemoryTreeMeIndex delegate = new InMemoryTreeMeIndex() {
+            @Override
+            public Map<ImmutablePath, Node> getByPaths(Collection<Path> paths, String type) {
+                Map<ImmutablePath, Node> loaded = super.getByPaths(paths, type);
+
+                // a write finishing after the load read the node, but before it is cached
+                Node changed = createNode("/group", false);
+                changed.setValue("changed");
+                caching.get().save(changed);
+
+                return loaded;
+            }
+        };
+        delegate.save(createNode("/", false));
+        delegate.save(createNode("/group", false));
+        caching.set(CachingTreeMeIndex.builder().delegate(delegate).build());
+
+        assertEquals("group", caching.get().getByPaths(newArrayList(path("/group")), TYPE).get(path("/group").toImmutable()).getValue());
+        assertEquals("changed", caching.get().getByPath(path("/group"), TYPE).get().getValue());
+    }
+
+    @Test
+    public void testSaveInvalidatesAncestors() {
+        assertEquals(3, size(treeMeIndex.getAllByPath(path("/group"), TYPE).get()));
+        assertEquals(1, size(treeMeIndex.getChildrenByPath(path("/group/nested"), TYPE).get()));
+        assertFalse(treeMeIndex.getByPath(path("/group/nested/other"), TYPE).isPresent());
+
+        treeMeIndex.save(createNode("/group/nested/other", true));
+
+        assertEquals(4, size(treeMeIndex.getAllByPath(path("/group"), TYPE).get()));
+        assertEquals(5, size(treeMeIndex.getAllByPath(path("/"), TYPE).get()));
+        assertEquals(2, size(treeMeIndex.getChildrenByPath(path("/group/nested"), TYPE).get()));
+        assertTrue(treeMeIndex.getByPath(path("/group/nested/other"), TYPE).isPresent());
+    }
+
+    @Test
+    public void testDeleteInvalidatesSubtree() {
+        assertTrue(treeMeIndex.getByPath(path("/group/nested/resource"), TYPE).isPresent());
+        assertEquals(1, size(treeMeIndex.getChildrenByPath(path("/group"), TYPE).get()));
+        assertEquals(4, size(treeMeIndex.getAllByPath(path("/"), TYPE).get()));
+
+        treeMeIndex.deleteByPath(path("/group/nested"), TYPE);
+
+        assertFalse(treeMeIndex.getByPath(path("/group/nested/resource"), TYPE).isPresent());
+        assertFalse(treeMeIndex.getAllByPath(path("/group/nested"), TYPE).isPresent());
+        assertEquals(0, size(treeMeIndex.getChildrenByPath(path("/group"), TYPE).get()));
+        assertEquals(2, size(treeMeIndex.getAllByPath(path("/"), TYPE).get()));
+    }
+
+    @Test
+    public void testFailedSaveLeavesCacheConsistent() {
+        assertEquals(1, size(treeMeIndex.getChildrenByPath(path("/group"), TYPE).get()));
+
+        try {
+            treeMeIndex.save(createNode("/group", true));
+            fail("Expected group to leaf conversion to be rejected.");
+        } catch (TreeMeSaveException e) {
+            assertFalse(treeMeIndex.getByPath(path("/group"), TYPE).get().getLeaf());
+        }
+    }
+
+    @Test
+    public void testReturnedNodesDoNotChangeCache() {
+        treeMeIndex.getByPath(path("/group"), TYPE).get().setValue("changed");
+
+        assertEquals("group", treeMeIndex.getByPath(path("/group"), TYPE).get().getValue());
+    }
+
+    private static int size(Iterable<Node> nodes) {
+        return newArrayList(nodes).size();
+    }
+
+    private static Path path(String path) {
+        return Path.fromDelimited(path, PATH_DELIM);
+    }
+
+    private static Node createNode(String path, boolean leaf) {
+        String name = path.substring(path.lastIndexOf(PATH_DELIM) + 1);
+
+        return Node.builder()
+                .path(path(path).getPath())
+                .type(TYPE)
+                .name(name)
+                .leaf(leaf)
+                .value(name)
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package tree.me.service;
+
+import org.junit.Test;
+import tree.me.core.api.ANode;
+import tree.me.core.index.CompactNode;
+import tree.me.core.index.Node;
+import tree.me.core.index.ParentPathTable;
+import tree.me.core.index.Path;
+import tree.me.core.index.TypeDictionary;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.*;
+
+public class CompactNodeTest {
+
+    private static final String PATH_DELIM = "/";
+    private static final String TYPE = "ATT&CK";
+
+    @Test
+    public void testCompactNodeExpandsToEqualNode() {
+        TypeDictionary types = new TypeDictionary();
+        ParentPathTable parents = new ParentPathTable();
+
+        for (String path : newArrayList("/", "/group", "/group/nested/resource")) {
+            Node node = createNode(path);
+            CompactNode compact = CompactNode.of(node, types, parents);
+
+            assertEquals(node, compact.toNode(types));
+            assertNotSame(compact.toNode(types), compact.toNode(types));
+            assertEquals(compact, CompactNode.of(node, types, parents));
+        }
+
+        assertEquals(1, types.size());
+    }
+
+    @Test
+    public void testSiblingsShareParentPath() {
+        TypeDictionary types = new TypeDictionary();
+        ParentPathTable parents = new ParentPathTable();
+        List<CompactNode> compacted = CompactNode.compactAll(newArrayList(
+                createNode("/group/a"),
+                createNode("/other")), types, parents);
+        CompactNode later = CompactNode.of(createNode("/group/b"), types, parents);
+
+        assertEquals(createNode("/group/a"), compacted.get(0).toNode(types));
+        assertEquals(createNode("/other"), compacted.get(1).toNode(types));
+        assertEquals(createNode("/group/b"), later.toNode(types));
+    }
+
+    @Test
+    public void testParentPathTableSharesEqualPaths() {
+        ParentPathTable parents = new ParentPathTable();
+        String path = createNode("/group").getPath();
+
+        assertSame(parents.intern(path), parents.intern(new String(path)));
+    }
+
+    @Test
+    public void testTypeDictionariesAreIndependent() {
+        TypeDictionary types = new TypeDictionary();
+        TypeDictionary others = new TypeDictionary();
+        others.idOf("other");
+
+        Node node = createNode("/group");
+        CompactNode compact = CompactNode.of(node, others, new ParentPathTable());
+
+        assertEquals(0, types.size());
+        assertEquals(node, compact.toNode(others));
+    }
+
+    @Test
+    public void testANodeIsNotEqualToPlainNode() {
+        Node node = createNode("/group");
+        ANode aNode = new ANode(node.getPath(), node.getType(), node.getName(), node.getLeaf(), node.getValue(), newArrayList());
+
+        assertNotEquals(node, aNode);
+        assertNotEquals(aNode, node);
+    }
+
+    private static Node createNode(String path) {
+        String name = path.substring(path.lastIndexOf(PATH_DELIM) + 1);
+
+        return Node.builder()
+                .path(Path.fromDelimited(path, PATH_DELIM).getPath())
+                .type(TYPE)
+                .name(name)
+                .leaf(false)
+                .value("")
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package tree.me.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tree.me.core.index.Node;
+import tree.me.core.index.Path;
+import tree.me.service.async.ExecutorAsyncTreeMeIndex;
+import tree.me.service.exception.TreeMeSaveException;
+import tree.me.service.memory.InMemoryTreeMeIndex;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.*;
+
+public class ExecutorAsyncTreeMeIndexTest {
+
+    private static final String PATH_DELIM = "/";
+    private static final String TYPE = "ATT&CK";
+
+    private ExecutorAsyncTreeMeIndex treeMeIndex;
+
+    @Before
+    public void before() {
+        treeMeIndex = new ExecutorAsyncTreeMeIndex(new InMemoryTreeMeIndex());
+    }
+
+    @After
+    public void after() {
+        treeMeIndex.close();
+    }
+
+    @Test
+    public void testComposedLookups() throws Exception {
+        treeMeIndex.save(createNode("/", false))
+                .thenCompose(saved -> treeMeIndex.saveAll(newArrayList(
+                        createNode("/a", false),
+                        createNode("/b", false),
+                        createNode("/a/resource", true))))
+                .get();
+
+        CompletableFuture<Optional<Iterable<Node>>> a = treeMeIndex.getAllByPath(path("/a"), TYPE);
+        CompletableFuture<Optional<Iterable<Node>>> b = treeMeIndex.getAllByPath(path("/b"), TYPE);
+
+        int total = a.thenCombine(b, (left, right) ->
+                newArrayList(left.get()).size() + newArrayList(right.get()).size()).get();
+        assertEquals(3, total);
+
+        treeMeIndex.deleteByPath(path("/a"), TYPE).get();
+        assertFalse(treeMeIndex.getByPath(path("/a/resource"), TYPE).get().isPresent());
+    }
+
+    @Test
+    public void testFailuresCompleteExceptionally() throws Exception {
+        try {
+            treeMeIndex.save(createNode("/", true)).get();
+            fail("Expected root leaf to be rejected.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TreeMeSaveException);
+        }
+    }
+
+    @Test
+    public void testNodesChangedAfterSaveAreSavedAsPassed() throws Exception {
+        List<Runnable> pending = newArrayList();
+        ExecutorAsyncTreeMeIndex queued = new ExecutorAsyncTreeMeIndex(treeMeIndex.getTreeMeIndex(), pending::add);
+
+        Node root = createNode("/", false);
+        Node group = createNode("/group", false);
+        CompletableFuture<Void> saved = queued.save(root);
+        CompletableFuture<Void> savedAll = queued.saveAll(newArrayList(group));
+
+        root.setValue("changed");
+        group.setPath(path("/other").getPath());
+        pending.forEach(Runnable::run);
+        saved.get();
+        savedAll.get();
+
+        assertEquals(createNode("/", false), treeMeIndex.getByPath(path("/"), TYPE).get().get());
+        assertTrue(treeMeIndex.getByPath(path("/group"), TYPE).get().isPresent());
+        assertFalse(treeMeIndex.getByPath(path("/other"), TYPE).get().isPresent());
+    }
+
+    private static Path path(String path) {
+        return Path.fromDelimited(path, PATH_DELIM);
+    }
+
+    private static Node createNode(String path, boolean leaf) {
+        String name = path.substring(path.lastIndexOf(PATH_DELIM) + 1);
+
+        return Node.builder()
+                .path(path(path).getPath())
+                .type(TYPE)
+                .name(name)
+                .leaf(leaf)
+                .value(name)
+                .build();
+    }
+}
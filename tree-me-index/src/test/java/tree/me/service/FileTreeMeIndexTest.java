@@ -0,0 +1,334 @@
+package tree.me.service;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
+import tree.me.core.index.Path;
+import tree.me.service.exception.TreeMeSaveException;
+import tree.me.service.file.FileTreeMeIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.Assert.*;
+
+public class FileTreeMeIndexTest {
+
+    private static final String PATH_DELIM = "/";
+    private static final String TYPE = "ATT&CK";
+
+    private File directory;
+    private FileTreeMeIndex treeMeIndex;
+
+    @Before
+    public void before() throws Exception {
+        directory = Files.createTempDirectory("tree-me-file").toFile();
+        treeMeIndex = open();
+    }
+
+    @After
+    public void after() {
+        treeMeIndex.close();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSaveAndGet() {
+        saveTree();
+
+        assertEquals(createNode("/group/nested", false), treeMeIndex.getByPath(path("/group/nested"), TYPE).get());
+        assertEquals(2, size(treeMeIndex.getChildrenByPath(path("/group"), TYPE).get()));
+        assertEquals(4, size(treeMeIndex.getAllByPath(path("/group"), TYPE).get()));
+        assertFalse(treeMeIndex.getAllByPath(path("/missing"), TYPE).isPresent());
+    }
+
+    @Test
+    public void testChildrenSkipDescendantsAndSiblingPrefixes() {
+        saveTree();
+        treeMeIndex.save(createNode("/group\u0000", false));
+        treeMeIndex.save(createNode("/group/a\u0000", true));
+
+        List<Node> children = newArrayList(treeMeIndex.getChildrenByPath(path("/group"), TYPE).get());
+        assertEquals(3, children.size());
+
+        NodePage first = treeMeIndex.getChildrenByPath(path("/group"), TYPE, 2, null).get();
+        NodePage second = treeMeIndex.getChildrenByPath(path("/group"), TYPE, 2, first.getNextToken()).get();
+        assertEquals(children.subList(0, 2), first.getNodes());
+        assertEquals(children.subList(2, 3), second.getNodes());
+        assertFalse(second.hasNext());
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testSaveWithoutParent() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+    }
+
+    @Test
+    public void testDeleteCascadesAcrossRestart() throws Exception {
+        saveTree();
+        treeMeIndex.deleteByPath(path("/group/nested"), TYPE);
+
+        reopen(false);
+
+        assertEquals(3, treeMeIndex.size());
+        assertFalse(treeMeIndex.getByPath(path("/group/nested/resource"), TYPE).isPresent());
+    }
+
+    @Test
+    public void testMoveAcrossRestart() throws Exception {
+        saveTree();
+        treeMeIndex.save(createNode("/other", false));
+        treeMeIndex.move(path("/group/nested"), path("/other/moved"), TYPE);
+
+        reopen(false);
+
+        assertEquals(createNode("/other/moved/resource", true), treeMeIndex.getByPath(path("/other/moved/resource"), TYPE).get());
+        assertFalse(treeMeIndex.getByPath(path("/group/nested"), TYPE).isPresent());
+        assertEquals(6, treeMeIndex.size());
+    }
+
+    @Test
+    public void testMoveAndCopyReplayWithoutSnapshot() throws Exception {
+        saveTree();
+        treeMeIndex.save(createNode("/other", false));
+        treeMeIndex.move(path("/group/nested"), path("/other/moved"), TYPE);
+        treeMeIndex.copy(path("/other/moved"), path("/group/copied"), TYPE,
+                ImmutableMap.of("resource", "duplicate"));
+
+        reopen(true);
+
+        assertEquals(8, treeMeIndex.size());
+        assertFalse(treeMeIndex.getByPath(path("/group/nested"), TYPE).isPresent());
+        assertEquals(createNode("/other/moved/resource", true), treeMeIndex.getByPath(path("/other/moved/resource"), TYPE).get());
+        assertEquals("duplicate", treeMeIndex.getByPath(path("/group/copied/resource"), TYPE).get().getValue());
+    }
+
+    @Test
+    public void testTornMoveKeepsSource() throws Exception {
+        saveTree();
+        treeMeIndex.save(createNode("/other", false));
+        treeMeIndex.move(path("/group/nested"), path("/other/moved"), TYPE);
+        tearLastRecord();
+
+        treeMeIndex = open();
+
+        assertEquals(6, treeMeIndex.size());
+        assertTrue(treeMeIndex.getByPath(path("/group/nested/resource"), TYPE).isPresent());
+        assertFalse(treeMeIndex.getByPath(path("/other/moved"), TYPE).isPresent());
+    }
+
+    @Test
+    public void testRestartReplaysLogWithoutSnapshot() throws Exception {
+        saveTree();
+
+        reopen(true);
+
+        assertEquals(5, treeMeIndex.size());
+        assertEquals(4, size(treeMeIndex.getAllByPath(path("/group"), TYPE).get()));
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        saveTree();
+        treeMeIndex.save(createNode("/group/torn", true));
+        tearLastRecord();
+
+        treeMeIndex = open();
+        assertFalse(treeMeIndex.getByPath(path("/group/torn"), TYPE).isPresent());
+        assertEquals(5, treeMeIndex.size());
+
+        // appending after a recovered tail works
+        treeMeIndex.save(createNode("/group/torn", true));
+        reopen(true);
+        assertTrue(treeMeIndex.getByPath(path("/group/torn"), TYPE).isPresent());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        saveTree();
+
+        for (int i = 0; i < 200; i++) {
+            Node resource = createNode("/group/resource", true);
+            resource.setValue("value" + i);
+            treeMeIndex.save(resource);
+        }
+
+        treeMeIndex.compact();
+
+        assertEquals("value199", treeMeIndex.getByPath(path("/group/resource"), TYPE).get().getValue());
+        assertEquals(1, segments());
+
+        treeMeIndex.save(createNode("/group/after", true));
+        reopen(false);
+
+        assertEquals(6, treeMeIndex.size());
+        assertEquals("value199", treeMeIndex.getByPath(path("/group/resource"), TYPE).get().getValue());
+    }
+
+    @Test
+    public void testCompactionWhileReading() throws Exception {
+        saveTree();
+        ExecutorService executor = newFixedThreadPool(4);
+        AtomicBoolean compacting = new AtomicBoolean(true);
+        List<Future<?>> reads = newArrayList();
+
+        for (int i = 0; i < 4; i++) {
+            reads.add(executor.submit(() -> {
+                while (compacting.get()) {
+                    assertTrue(treeMeIndex.getByPath(path("/group/resource"), TYPE).isPresent());
+                    assertEquals(5, newArrayList(treeMeIndex.getAllByPath(path("/"), TYPE).get()).size());
+                }
+            }));
+        }
+
+        try {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 200; i++) {
+                    treeMeIndex.save(createNode("/group/resource", true));
+                }
+                treeMeIndex.compact();
+            }
+        } finally {
+            compacting.set(false);
+            executor.shutdown();
+        }
+
+        for (Future<?> read : reads) {
+            read.get();
+        }
+        assertEquals(1, segments());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDirectoryIsLocked() throws Exception {
+        open();
+    }
+
+    private void saveTree() {
+        treeMeIndex.saveAll(newArrayList(
+                createNode("/", false),
+                createNode("/group", false),
+                createNode("/group/resource", true),
+                createNode("/group/nested", false),
+                createNode("/group/nested/resource", true)));
+    }
+
+    @Test
+    public void testWritesWaitForDeleteAndReturn() throws Exception {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+        ExecutorService executor = newFixedThreadPool(1);
+
+        try {
+            Future<?> save;
+
+            try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(group, TYPE, () -> {
+            }).get()) {
+                save = executor.submit(() -> treeMeIndex.save(createNode("/group/late", true)));
+                Thread.sleep(100);
+
+                assertFalse(save.isDone());
+                assertEquals(2, nodes.count());
+            }
+
+            try {
+                save.get();
+                fail("Expected the save to find its parent deleted.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TreeMeSaveException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertFalse(treeMeIndex.getByPath(group, TYPE).isPresent());
+    }
+
+    private FileTreeMeIndex open() throws IOException {
+        return FileTreeMeIndex.builder()
+                .directory(directory)
+                .segmentSize(4096)
+                .maintenanceIntervalMillis(0)
+                .build();
+    }
+
+    private void reopen(boolean dropSnapshot) throws IOException {
+        treeMeIndex.close();
+
+        if (dropSnapshot) {
+            new File(directory, "index.snapshot").delete();
+        }
+
+        treeMeIndex = open();
+    }
+
+    /**
+     * Close the index and zero the last byte of its last record, as if a crash cut it short.
+     */
+    private void tearLastRecord() throws IOException {
+        treeMeIndex.close();
+
+        new File(directory, "index.snapshot").delete();
+        File segment = new File(directory, String.format("%010d.segment", 0));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long last = file.length() - 1;
+            while (last > 0) {
+                file.seek(last);
+                if (file.read() != 0) {
+                    break;
+                }
+                last--;
+            }
+            file.seek(last);
+            file.write(0);
+        }
+    }
+
+    private int segments() {
+        return directory.listFiles((dir, name) -> name.endsWith(".segment")).length;
+    }
+
+    private static int size(Iterable<Node> nodes) {
+        return newArrayList(nodes).size();
+    }
+
+    private static Path path(String path) {
+        return Path.fromDelimited(path, PATH_DELIM);
+    }
+
+    private static Node createNode(String path, boolean leaf) {
+        String name = path.substring(path.lastIndexOf(PATH_DELIM) + 1);
+
+        return Node.builder()
+                .path(path(path).getPath())
+                .type(TYPE)
+                .name(name)
+                .leaf(leaf)
+                .value(name)
+                .build();
+    }
+}
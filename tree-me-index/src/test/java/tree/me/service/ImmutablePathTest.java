@@ -0,0 +1,92 @@
+package tree.me.service;
+
+import org.junit.Test;
+import tree.me.core.index.ImmutablePath;
+import tree.me.core.index.Path;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.*;
+import static tree.me.core.index.Path.ROOT;
+
+public class ImmutablePathTest {
+
+    private static final String PATH_DELIM = "/";
+
+    @Test
+    public void testEncodingMatchesPath() {
+        for (String delimited : newArrayList("/", "/group", "/group/nested/resource")) {
+            Path path = Path.fromDelimited(delimited, PATH_DELIM);
+            ImmutablePath immutable = ImmutablePath.fromDelimited(delimited, PATH_DELIM);
+
+            assertEquals(path.getPath(), immutable.getPath());
+            assertEquals(path.getParentPath(), immutable.getParentPath());
+            assertEquals(path.isRoot(), immutable.isRoot());
+            assertEquals(immutable, ImmutablePath.from(path));
+            assertEquals(path.getPath(), immutable.toPath().getPath());
+        }
+    }
+
+    @Test
+    public void testChildrenShareParent() {
+        ImmutablePath group = ImmutablePath.root().to("group");
+        ImmutablePath nested = group.to("nested");
+
+        assertSame(group, nested.getParent());
+        assertSame(ImmutablePath.root(), group.getParent());
+        assertSame(ImmutablePath.root(), ImmutablePath.root().getParent());
+        assertEquals("nested", nested.getName());
+        assertEquals(2, nested.getDepth());
+        assertEquals(ROOT, ImmutablePath.root().getParentPath());
+        assertEquals(ImmutablePath.fromDelimited("/group", PATH_DELIM), group);
+    }
+
+    @Test
+    public void testIsAncestorOf() {
+        ImmutablePath group = ImmutablePath.fromDelimited("/a", PATH_DELIM);
+
+        assertTrue(ImmutablePath.root().isAncestorOf(group));
+        assertTrue(group.isAncestorOf(group.to("b").to("c")));
+        assertTrue(group.isAncestorOf(ImmutablePath.fromDelimited("/a/b", PATH_DELIM)));
+        assertFalse(group.isAncestorOf(group));
+        assertFalse(group.isAncestorOf(ImmutablePath.fromDelimited("/ab", PATH_DELIM)));
+        assertFalse(group.isAncestorOf(ImmutablePath.root()));
+    }
+
+    @Test
+    public void testParentSortsBeforeDescendants() {
+        ImmutablePath group = ImmutablePath.fromDelimited("/a", PATH_DELIM);
+
+        assertTrue(ImmutablePath.root().compareTo(group) < 0);
+        assertTrue(group.compareTo(group.to("z")) < 0);
+        assertTrue(group.to("z").compareTo(ImmutablePath.fromDelimited("/ab", PATH_DELIM)) < 0);
+        assertEquals(0, group.compareTo(ImmutablePath.fromDelimited("/a", PATH_DELIM)));
+    }
+
+    @Test
+    public void testPathIsHandleOnImmutablePath() {
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+        ImmutablePath before = group.toImmutable();
+        Path copy = Path.from(group);
+
+        assertSame(before, copy.toImmutable());
+
+        group.to("nested");
+        assertSame(before, group.toImmutable().getParent());
+        assertSame(before, copy.toImmutable());
+        assertNotEquals(group, Path.from(group.getPath()));
+        assertEquals(group.toImmutable(), Path.from(group.getPath()).toImmutable());
+    }
+
+    @Test
+    public void testEncodedSegmentsAreNotTrimmed() {
+        Path path = new Path().to(" group ").to("nested");
+
+        assertEquals(path.getPath(), Path.from(path.getPath()).getPath());
+        assertEquals(ROOT + " group ", ImmutablePath.from(path.getPath()).getParentPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySegmentNotAllowed() {
+        ImmutablePath.root().to("");
+    }
+}
@@ -0,0 +1,375 @@
+package tree.me.service;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
+import tree.me.core.index.Path;
+import tree.me.service.exception.TreeMeSaveException;
+import tree.me.service.memory.InMemoryTreeMeIndex;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class InMemoryTreeMeIndexTest {
+
+    private static final String PATH_DELIM = "/";
+    private static final String TYPE = "ATT&CK";
+
+    private InMemoryTreeMeIndex treeMeIndex;
+
+    @Before
+    public void before() {
+        treeMeIndex = new InMemoryTreeMeIndex();
+    }
+
+    @Test
+    public void testSaveAndGetByPath() {
+        Node expected = createNode("/", false);
+        treeMeIndex.save(expected);
+
+        Optional<Node> saved = treeMeIndex.getByPath(Path.from(expected.getPath()), TYPE);
+        assertTrue(saved.isPresent());
+        assertEquals(expected, saved.get());
+        assertNotSame(expected, saved.get());
+    }
+
+    @Test
+    public void testReturnedNodesDoNotChangeIndex() {
+        Node root = createNode("/", false);
+        treeMeIndex.save(root);
+
+        treeMeIndex.getByPath(Path.from(root.getPath()), TYPE).get().setValue("changed");
+        root.setValue("changed too");
+
+        assertEquals("", treeMeIndex.getByPath(Path.from(root.getPath()), TYPE).get().getValue());
+    }
+
+    @Test
+    public void testGetChildrenAndAllByPath() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/resource1", true));
+        treeMeIndex.save(createNode("/group/nested", false));
+        treeMeIndex.save(createNode("/group/nested/resource2", true));
+        treeMeIndex.save(createNode("/other", false));
+
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+
+        List<Node> children = newArrayList(treeMeIndex.getChildrenByPath(group, TYPE).get());
+        assertEquals(2, children.size());
+
+        List<Node> all = newArrayList(treeMeIndex.getAllByPath(group, TYPE).get());
+        assertEquals(4, all.size());
+
+        assertFalse(treeMeIndex.getChildrenByPath(Path.fromDelimited("/missing", PATH_DELIM), TYPE).isPresent());
+        assertFalse(treeMeIndex.getAllByPath(group, "other type").isPresent());
+    }
+
+    @Test
+    public void testGetChildrenPages() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+
+        for (int i = 0; i < 5; i++) {
+            treeMeIndex.save(createNode("/group/resource" + i, true));
+        }
+
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+
+        NodePage first = treeMeIndex.getChildrenByPath(group, TYPE, 2, null).get();
+        assertEquals("resource0", first.getNodes().get(0).getName());
+        assertTrue(first.hasNext());
+
+        NodePage second = treeMeIndex.getChildrenByPath(group, TYPE, 2, first.getNextToken()).get();
+        assertEquals("resource2", second.getNodes().get(0).getName());
+
+        NodePage last = treeMeIndex.getChildrenByPath(group, TYPE, 2, second.getNextToken()).get();
+        assertEquals(1, last.getNodes().size());
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    public void testSiblingPrefixIsNotPartOfSubtree() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/a", false));
+        treeMeIndex.save(createNode("/a/b", true));
+        treeMeIndex.save(createNode("/ab", false));
+        treeMeIndex.save(createNode("/a\u0000", false));
+
+        Path a = Path.fromDelimited("/a", PATH_DELIM);
+        assertEquals(2, newArrayList(treeMeIndex.getAllByPath(a, TYPE).get()).size());
+
+        treeMeIndex.deleteByPath(a, TYPE);
+        assertTrue(treeMeIndex.getByPath(Path.fromDelimited("/ab", PATH_DELIM), TYPE).isPresent());
+        assertTrue(treeMeIndex.getByPath(Path.fromDelimited("/a\u0000", PATH_DELIM), TYPE).isPresent());
+        assertEquals(3, treeMeIndex.size());
+    }
+
+    @Test
+    public void testDeleteCascades() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/nested", false));
+        treeMeIndex.save(createNode("/group/nested/resource", true));
+
+        treeMeIndex.deleteByPath(Path.fromDelimited("/group", PATH_DELIM), TYPE);
+
+        assertEquals(1, treeMeIndex.size());
+        Path root = Path.fromDelimited("/", PATH_DELIM);
+        assertFalse(treeMeIndex.getChildrenByPath(root, TYPE).get().iterator().hasNext());
+
+        // Recreating the deleted group must not bring back its old children.
+        treeMeIndex.save(createNode("/group", false));
+        assertEquals(1, newArrayList(treeMeIndex.getAllByPath(Path.fromDelimited("/group", PATH_DELIM), TYPE).get()).size());
+    }
+
+    @Test
+    public void testDeleteAndReturnByPath() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+        treeMeIndex.save(createNode("/other", false));
+
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+        List<Node> deleted;
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(group, TYPE).get()) {
+            deleted = nodes.collect(toList());
+        }
+
+        assertEquals(2, deleted.size());
+        assertTrue(deleted.contains(createNode("/group/resource", true)));
+        assertEquals(2, treeMeIndex.size());
+        assertFalse(treeMeIndex.deleteAndReturnByPath(group, TYPE).isPresent());
+    }
+
+    @Test
+    public void testDeleteAndReturnRunsCallbackBeforeDeleting() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+        List<Integer> sizes = newArrayList();
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(group, TYPE, () -> sizes.add(treeMeIndex.size())).get()) {
+            assertEquals(2, nodes.count());
+        }
+
+        assertEquals(newArrayList(3), sizes);
+        assertEquals(1, treeMeIndex.size());
+
+        treeMeIndex.save(createNode("/group", false));
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(group, TYPE, () -> {
+            throw new IllegalStateException("Callback failed.");
+        }).get()) {
+            nodes.forEach(node -> {
+            });
+            fail("Expected the callback to fail.");
+        } catch (IllegalStateException e) {
+            assertEquals("Callback failed.", e.getMessage());
+        }
+
+        assertEquals(2, treeMeIndex.size());
+    }
+
+    @Test
+    public void testWritesWaitForDeleteAndReturn() throws Exception {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+        ExecutorService executor = newFixedThreadPool(1);
+
+        try {
+            Future<?> save;
+
+            try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(group, TYPE, () -> {
+            }).get()) {
+                save = executor.submit(() -> treeMeIndex.save(createNode("/group/late", true)));
+                Thread.sleep(100);
+
+                assertFalse(save.isDone());
+                assertEquals(2, nodes.count());
+            }
+
+            try {
+                save.get();
+                fail("Expected the save to find its parent deleted.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TreeMeSaveException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertFalse(treeMeIndex.getByPath(group, TYPE).isPresent());
+    }
+
+    @Test
+    public void testExistsAndCounts() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/nested", false));
+        treeMeIndex.save(createNode("/group/nested/resource", true));
+
+        assertTrue(treeMeIndex.exists(Path.fromDelimited("/group/nested", PATH_DELIM), TYPE));
+        assertFalse(treeMeIndex.exists(Path.fromDelimited("/missing", PATH_DELIM), TYPE));
+        assertEquals(1, treeMeIndex.countChildren(Path.fromDelimited("/group", PATH_DELIM), TYPE));
+        assertEquals(0, treeMeIndex.countChildren(Path.fromDelimited("/missing", PATH_DELIM), TYPE));
+        assertEquals(2, treeMeIndex.countDescendants(Path.fromDelimited("/group", PATH_DELIM), TYPE));
+        assertEquals(3, treeMeIndex.countDescendants(Path.fromDelimited("/", PATH_DELIM), TYPE));
+    }
+
+    @Test
+    public void testMove() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/nested", false));
+        treeMeIndex.save(createNode("/group/nested/resource", true));
+        treeMeIndex.save(createNode("/other", false));
+
+        treeMeIndex.move(Path.fromDelimited("/group", PATH_DELIM), Path.fromDelimited("/other/renamed", PATH_DELIM), TYPE);
+
+        assertEquals(5, treeMeIndex.size());
+        assertTrue(treeMeIndex.getByPath(Path.fromDelimited("/other/renamed/nested/resource", PATH_DELIM), TYPE).get().getLeaf());
+        assertEquals(1, newArrayList(treeMeIndex.getChildrenByPath(Path.fromDelimited("/", PATH_DELIM), TYPE).get()).size());
+        assertEquals(1, newArrayList(treeMeIndex.getChildrenByPath(Path.fromDelimited("/other/renamed", PATH_DELIM), TYPE).get()).size());
+    }
+
+    @Test
+    public void testCopy() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+
+        treeMeIndex.copy(Path.fromDelimited("/group", PATH_DELIM), Path.fromDelimited("/copy", PATH_DELIM), TYPE,
+                ImmutableMap.of("resource", "duplicate"));
+
+        assertEquals(5, treeMeIndex.size());
+        assertEquals("duplicate", treeMeIndex.getByPath(Path.fromDelimited("/copy/resource", PATH_DELIM), TYPE).get().getValue());
+        assertEquals(2, newArrayList(treeMeIndex.getChildrenByPath(Path.fromDelimited("/", PATH_DELIM), TYPE).get()).size());
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testMoveUnderItself() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+
+        treeMeIndex.move(Path.fromDelimited("/group", PATH_DELIM), Path.fromDelimited("/group/inner", PATH_DELIM), TYPE);
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testSaveWithoutParent() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group/resource", true));
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testSaveUnderLeaf() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/resource", true));
+        treeMeIndex.save(createNode("/resource/child", true));
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testConvertGroupToLeaf() {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+        treeMeIndex.save(createNode("/group", true));
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testRootLeaf() {
+        treeMeIndex.save(createNode("/", true));
+    }
+
+    @Test
+    public void testSaveAllIsAtomic() {
+        treeMeIndex.save(createNode("/", false));
+
+        try {
+            treeMeIndex.saveAll(newArrayList(
+                    createNode("/group/resource", true),
+                    createNode("/group", false),
+                    createNode("/missing/resource", true)));
+            fail("Expected batch to be rejected.");
+        } catch (TreeMeSaveException e) {
+            assertEquals(1, treeMeIndex.size());
+        }
+
+        treeMeIndex.saveAll(newArrayList(
+                createNode("/group/resource", true),
+                createNode("/group", false)));
+        assertEquals(3, treeMeIndex.size());
+    }
+
+    @Test
+    public void testConcurrentReadsDuringWrites() throws Exception {
+        treeMeIndex.save(createNode("/", false));
+        treeMeIndex.save(createNode("/group", false));
+
+        ExecutorService executor = newFixedThreadPool(4);
+        List<Callable<Boolean>> tasks = newArrayList();
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+
+        tasks.add(() -> {
+            for (int i = 0; i < 200; i++) {
+                treeMeIndex.saveAll(newArrayList(
+                        createNode("/group/nested", false),
+                        createNode("/group/nested/resource1", true),
+                        createNode("/group/nested/resource2", true)));
+                treeMeIndex.deleteByPath(Path.fromDelimited("/group/nested", PATH_DELIM), TYPE);
+            }
+            return true;
+        });
+
+        for (int reader = 0; reader < 3; reader++) {
+            tasks.add(() -> {
+                for (int i = 0; i < 200; i++) {
+                    int size = newArrayList(treeMeIndex.getAllByPath(group, TYPE).get()).size();
+
+                    // Batches and cascading deletes are never seen half applied.
+                    if (size != 1 && size != 4) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+
+        try {
+            for (Future<Boolean> task : executor.invokeAll(tasks)) {
+                assertTrue(task.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Node createNode(String path, boolean leaf) {
+        String name = path.substring(path.lastIndexOf(PATH_DELIM) + 1);
+
+        return Node.builder()
+                .path(Path.fromDelimited(path, PATH_DELIM).getPath())
+                .type(TYPE)
+                .name(name)
+                .leaf(leaf)
+                .value(name)
+                .build();
+    }
+}
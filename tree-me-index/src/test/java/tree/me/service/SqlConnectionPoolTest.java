@@ -0,0 +1,151 @@
+package tree.me.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tree.me.core.index.Node;
+import tree.me.core.index.Path;
+import tree.me.service.sql.SqlConnection;
+import tree.me.service.sql.SqlConnectionPool;
+import tree.me.service.sql.SqlConnectionPoolStats;
+import tree.me.service.sql.SqlTreeMeIndex;
+
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.Assert.*;
+
+public class SqlConnectionPoolTest {
+
+    private static final String IN_MEMORY_JDBC_URL = "jdbc:h2:mem:pooled;MODE=PostgreSQL";
+    private static final String IN_MEMORY_JDBC_USER = "h2";
+    private static final String IN_MEMORY_JDBC_PASSWORD = "h2";
+
+    private static final String TYPE = "ATT&CK";
+    private static final String PATH_DELIM = "/";
+
+    private SqlConnectionPool pool;
+
+    @Before
+    public void before() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(IN_MEMORY_JDBC_URL);
+        dataSource.setUser(IN_MEMORY_JDBC_USER);
+        dataSource.setPassword(IN_MEMORY_JDBC_PASSWORD);
+
+        pool = SqlConnectionPool.builder()
+                .dataSource(dataSource)
+                .maxSize(4)
+                .maxWaitMillis(100)
+                .build();
+    }
+
+    @After
+    public void after() throws Exception {
+        SqlConnection connection = pool.borrow();
+        connection.getConnection().prepareStatement("DROP TABLE IF EXISTS nodes;")
+                .executeUpdate();
+        pool.release(connection);
+        pool.close();
+    }
+
+    @Test
+    public void testReleasedConnectionIsReused() throws Exception {
+        SqlConnection first = pool.borrow();
+        pool.release(first);
+
+        SqlConnection second = pool.borrow();
+        pool.release(second);
+
+        assertSame(first, second);
+
+        SqlConnectionPoolStats stats = pool.getStats();
+        assertEquals(1, stats.getTotalCreated());
+        assertEquals(2, stats.getTotalBorrowed());
+        assertEquals(0, stats.getActive());
+        assertEquals(1, stats.getIdle());
+    }
+
+    @Test
+    public void testReleaseRestoresAutoCommit() throws Exception {
+        SqlConnection connection = pool.borrow();
+        connection.getConnection().setAutoCommit(false);
+        pool.release(connection);
+
+        SqlConnection reborrowed = pool.borrow();
+        assertTrue(reborrowed.getConnection().getAutoCommit());
+        pool.release(reborrowed);
+    }
+
+    @Test
+    public void testExhaustedPoolTimesOut() throws Exception {
+        List<SqlConnection> borrowed = newArrayList();
+
+        for (int i = 0; i < 4; i++) {
+            borrowed.add(pool.borrow());
+        }
+
+        assertEquals(1.0, pool.getStats().getUtilization(), 0.0);
+
+        try {
+            pool.borrow();
+            fail("Expected pool to time out.");
+        } catch (SQLTimeoutException e) {
+            assertEquals(1, pool.getStats().getTotalTimeouts());
+        } finally {
+            borrowed.forEach(pool::release);
+        }
+    }
+
+    @Test
+    public void testClosedConnectionsAreDiscarded() throws Exception {
+        SqlConnection connection = pool.borrow();
+        pool.release(connection);
+        connection.getConnection().close();
+
+        SqlConnection replacement = pool.borrow();
+        pool.release(replacement);
+
+        assertNotSame(connection, replacement);
+        assertEquals(1, pool.getStats().getTotalValidationFailures());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        SqlTreeMeIndex treeMeIndex = new SqlTreeMeIndex(pool);
+        Node root = Node.builder()
+                .path(Path.fromDelimited("/", PATH_DELIM).getPath())
+                .type(TYPE)
+                .name("Root Node")
+                .leaf(false)
+                .value("")
+                .build();
+        treeMeIndex.save(root);
+
+        ExecutorService executor = newFixedThreadPool(8);
+        List<Callable<Optional<Node>>> reads = newArrayList();
+
+        for (int i = 0; i < 64; i++) {
+            reads.add(() -> treeMeIndex.getByPath(Path.from(root.getPath()), TYPE));
+        }
+
+        try {
+            for (Future<Optional<Node>> read : executor.invokeAll(reads)) {
+                assertEquals(root, read.get().get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        SqlConnectionPoolStats stats = treeMeIndex.getConnectionPoolStats();
+        assertEquals(0, stats.getActive());
+        assertTrue(stats.getTotalCreated() <= 4);
+    }
+}
@@ -1,21 +1,38 @@
 package tree.me.service;
 
+import com.google.common.collect.ImmutableMap;
 import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Node;
+import tree.me.core.index.NodePage;
 import tree.me.core.index.Path;
 import tree.me.service.exception.TreeMeSaveException;
+import tree.me.service.sql.SqlDialect;
+import tree.me.service.sql.SqlStatementCacheStats;
+import tree.me.service.sql.SqlTreeLayout;
 import tree.me.service.sql.SqlTreeMeIndex;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static java.sql.DriverManager.getConnection;
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.*;
 
+@RunWith(Parameterized.class)
 public class SqlTreeMeIndexTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(SqlTreeMeIndexTest.class);
@@ -31,6 +48,23 @@ public class SqlTreeMeIndexTest {
     private static Connection connection;
     private SqlTreeMeIndex treeMeIndex;
 
+    private final SqlTreeLayout layout;
+
+    public SqlTreeMeIndexTest(SqlTreeLayout layout) {
+        this.layout = layout;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> layouts() {
+        List<Object[]> layouts = newArrayList();
+
+        for (SqlTreeLayout layout : SqlTreeLayout.values()) {
+            layouts.add(new Object[]{layout});
+        }
+
+        return layouts;
+    }
+
     @BeforeClass
     public static void beforeClass() throws Exception {
         connection = getConnection(IN_MEMORY_JDBC_URL, IN_MEMORY_JDBC_USER, IN_MEMORY_JDBC_PASSWORD);
@@ -43,13 +77,24 @@ public class SqlTreeMeIndexTest {
 
     @Before
     public void before() throws Exception {
-        treeMeIndex = new SqlTreeMeIndex(connection);
+        treeMeIndex = SqlTreeMeIndex.builder()
+                .connection(connection)
+                .layout(layout)
+                .build();
     }
 
     @After
     public void after() throws Exception {
         connection.prepareStatement("DROP TABLE nodes;")
                 .executeUpdate();
+        connection.prepareStatement("DROP TABLE IF EXISTS node_closure;")
+                .executeUpdate();
+        connection.prepareStatement("DROP SEQUENCE IF EXISTS nodes_id_seq;")
+                .executeUpdate();
+        connection.prepareStatement("DROP TABLE IF EXISTS node_migrations;")
+                .executeUpdate();
+        connection.prepareStatement("DROP TABLE IF EXISTS node_copy_values;")
+                .executeUpdate();
     }
 
     @Test
@@ -253,6 +298,490 @@ public class SqlTreeMeIndexTest {
         assertFalse(allNodesAfterDelete.isPresent());
     }
 
+    @Test
+    public void testDeleteAndReturnByPath() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createNodeUnderGroup("nested"));
+        treeMeIndex.save(createTopLevelGroupNode("other"));
+
+        Path groupPath = Path.fromDelimited("/group", PATH_DELIM);
+        List<Node> deleted;
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(groupPath, TYPE).get()) {
+            deleted = nodes.collect(toList());
+        }
+
+        assertEquals(2, deleted.size());
+        assertTrue(deleted.contains(createNodeUnderGroup("nested")));
+        assertFalse(treeMeIndex.getByPath(groupPath, TYPE).isPresent());
+        assertTrue(treeMeIndex.getByPath(Path.fromDelimited("/other", PATH_DELIM), TYPE).isPresent());
+        assertFalse(treeMeIndex.deleteAndReturnByPath(groupPath, TYPE).isPresent());
+    }
+
+    @Test
+    public void testDeleteAndReturnRollsBackWhenClosedEarly() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createNodeUnderGroup("nested"));
+
+        Path groupPath = Path.fromDelimited("/group", PATH_DELIM);
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(groupPath, TYPE).get()) {
+            assertTrue(nodes.iterator().hasNext());
+        }
+
+        assertEquals(2, newArrayList(treeMeIndex.getAllByPath(groupPath, TYPE).get()).size());
+    }
+
+    @Test
+    public void testDeleteAndReturnRollsBackWhenCallbackFails() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createNodeUnderGroup("nested"));
+
+        Path groupPath = Path.fromDelimited("/group", PATH_DELIM);
+        List<Node> seen = newArrayList();
+
+        try (Stream<Node> nodes = treeMeIndex.deleteAndReturnByPath(groupPath, TYPE, () -> {
+            throw new IllegalStateException("Callback failed.");
+        }).get()) {
+            nodes.forEach(seen::add);
+            fail("Expected the callback to fail.");
+        } catch (IllegalStateException e) {
+            assertEquals("Callback failed.", e.getMessage());
+        }
+
+        assertEquals(2, seen.size());
+        assertEquals(2, newArrayList(treeMeIndex.getAllByPath(groupPath, TYPE).get()).size());
+    }
+
+    @Test
+    public void testMoveSubtree() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createNodeUnderGroup("nested"));
+        treeMeIndex.save(createTopLevelGroupNode("other"));
+
+        Path target = Path.fromDelimited("/other/renamed", PATH_DELIM);
+        treeMeIndex.move(Path.fromDelimited("/group", PATH_DELIM), target, TYPE);
+
+        assertFalse(treeMeIndex.getByPath(Path.fromDelimited("/group", PATH_DELIM), TYPE).isPresent());
+        assertEquals(GROUP, treeMeIndex.getByPath(target, TYPE).get().getName());
+        assertEquals(2, newArrayList(treeMeIndex.getAllByPath(target, TYPE).get()).size());
+        assertEquals(3, newArrayList(treeMeIndex.getAllByPath(Path.fromDelimited("/other", PATH_DELIM), TYPE).get()).size());
+
+        List<Node> children = newArrayList(treeMeIndex.getChildrenByPath(target, TYPE).get());
+        assertEquals(1, children.size());
+        assertEquals(Path.fromDelimited("/other/renamed/nested", PATH_DELIM).getPath(), children.get(0).getPath());
+
+        // the moved subtree must be linked to its new ancestors only
+        treeMeIndex.deleteByPath(Path.fromDelimited("/other", PATH_DELIM), TYPE);
+        assertEquals(1, newArrayList(treeMeIndex.getAllByPath(Path.fromDelimited("/", PATH_DELIM), TYPE).get()).size());
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testMoveOntoExistingPath() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createTopLevelGroupNode("other"));
+
+        treeMeIndex.move(Path.fromDelimited("/group", PATH_DELIM), Path.fromDelimited("/other", PATH_DELIM), TYPE);
+    }
+
+    @Test
+    public void testCopySubtree() {
+        Node resource = createNodeUnderGroup("resource");
+        resource.setLeaf(true);
+
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(resource);
+        treeMeIndex.save(createTopLevelGroupNode("other"));
+
+        Path target = Path.fromDelimited("/other/copy", PATH_DELIM);
+        treeMeIndex.copy(Path.fromDelimited("/group", PATH_DELIM), target, TYPE,
+                ImmutableMap.of("resource", "resource copy"));
+
+        Node copied = treeMeIndex.getByPath(Path.fromDelimited("/other/copy/resource", PATH_DELIM), TYPE).get();
+        assertEquals("resource copy", copied.getValue());
+        assertEquals("resource", treeMeIndex.getByPath(Path.from(resource.getPath()), TYPE).get().getValue());
+        assertEquals(1, newArrayList(treeMeIndex.getChildrenByPath(target, TYPE).get()).size());
+
+        // copies are linked to their new ancestors only
+        treeMeIndex.deleteByPath(Path.fromDelimited("/other", PATH_DELIM), TYPE);
+        assertEquals(3, newArrayList(treeMeIndex.getAllByPath(Path.fromDelimited("/", PATH_DELIM), TYPE).get()).size());
+    }
+
+    @Test
+    public void testCopyReplacesEachValueOnce() {
+        Node first = createNodeUnderGroup("first");
+        first.setLeaf(true);
+        first.setValue("a");
+        Node second = createNodeUnderGroup("second");
+        second.setLeaf(true);
+        second.setValue("b");
+
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(first);
+        treeMeIndex.save(second);
+
+        // chained and swapped replacements are each applied to the original value only
+        treeMeIndex.copy(Path.fromDelimited("/group", PATH_DELIM), Path.fromDelimited("/copy", PATH_DELIM), TYPE,
+                ImmutableMap.of("a", "b", "b", "a"));
+
+        assertEquals("b", treeMeIndex.getByPath(Path.fromDelimited("/copy/first", PATH_DELIM), TYPE).get().getValue());
+        assertEquals("a", treeMeIndex.getByPath(Path.fromDelimited("/copy/second", PATH_DELIM), TYPE).get().getValue());
+        assertEquals("a", treeMeIndex.getByPath(Path.from(first.getPath()), TYPE).get().getValue());
+    }
+
+    @Test
+    public void testGetByPaths() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createNodeUnderGroup("nested"));
+
+        Path nested = Path.fromDelimited("/group/nested", PATH_DELIM);
+        Path missing = Path.fromDelimited("/missing", PATH_DELIM);
+        Map<ImmutablePath, Node> found = treeMeIndex.getByPaths(newArrayList(nested, missing, Path.from(nested)), TYPE);
+
+        assertEquals(1, found.size());
+        assertEquals(createNodeUnderGroup("nested"), found.get(ImmutablePath.fromDelimited("/group/nested", PATH_DELIM)));
+        assertTrue(treeMeIndex.getByPaths(newArrayList(), TYPE).isEmpty());
+    }
+
+    @Test
+    public void testExistsAndCounts() {
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(createGroupNode());
+        treeMeIndex.save(createNodeUnderGroup("a"));
+        treeMeIndex.save(createNodeUnderGroup("b"));
+        treeMeIndex.save(createTopLevelGroupNode("group\u0000"));
+
+        Path root = Path.fromDelimited("/", PATH_DELIM);
+        Path group = Path.fromDelimited("/group", PATH_DELIM);
+        Path missing = Path.fromDelimited("/missing", PATH_DELIM);
+
+        assertTrue(treeMeIndex.exists(group, TYPE));
+        assertFalse(treeMeIndex.exists(missing, TYPE));
+        assertEquals(2, treeMeIndex.countChildren(group, TYPE));
+        assertEquals(2, treeMeIndex.countChildren(root, TYPE));
+        assertEquals(2, treeMeIndex.countDescendants(group, TYPE));
+        assertEquals(4, treeMeIndex.countDescendants(root, TYPE));
+        assertEquals(0, treeMeIndex.countDescendants(missing, TYPE));
+    }
+
+    @Test
+    public void testSiblingPrefixIsNotPartOfSubtree() {
+        Node root = createRootNode();
+        Node a = createTopLevelGroupNode("a");
+        Node ab = createTopLevelGroupNode("ab");
+        Node wildcard = createTopLevelGroupNode("a%");
+        Node child = Node.builder()
+                .path(Path.from("a").to("child").getPath())
+                .type(TYPE)
+                .name("child")
+                .leaf(true)
+                .value("child")
+                .build();
+
+        treeMeIndex.saveAll(newArrayList(root, a, ab, wildcard, child));
+
+        List<Node> subtree = newArrayList(treeMeIndex.getAllByPath(Path.from(a.getPath()), TYPE).get());
+        assertEquals(2, subtree.size());
+        assertTrue(subtree.contains(a));
+        assertTrue(subtree.contains(child));
+
+        List<Node> wildcardSubtree = newArrayList(treeMeIndex.getAllByPath(Path.from(wildcard.getPath()), TYPE).get());
+        assertEquals(newArrayList(wildcard), wildcardSubtree);
+
+        List<Node> children = newArrayList(treeMeIndex.getChildrenByPath(Path.from(a.getPath()), TYPE).get());
+        assertEquals(newArrayList(child), children);
+
+        treeMeIndex.deleteByPath(Path.from(a.getPath()), TYPE);
+
+        assertFalse(treeMeIndex.getByPath(Path.from(a.getPath()), TYPE).isPresent());
+        assertFalse(treeMeIndex.getByPath(Path.from(child.getPath()), TYPE).isPresent());
+        assertTrue(treeMeIndex.getByPath(Path.from(ab.getPath()), TYPE).isPresent());
+        assertTrue(treeMeIndex.getByPath(Path.from(wildcard.getPath()), TYPE).isPresent());
+    }
+
+    @Test
+    public void testBackfillParentPaths() throws Exception {
+        Node root = createRootNode();
+        Node group = createGroupNode();
+        Node resource1 = createNodeUnderGroup("resource1");
+        Node resource2 = createNodeUnderGroup("resource2");
+        treeMeIndex.saveAll(newArrayList(root, group, resource1, resource2));
+
+        // simulate rows written before the parent_path column existed
+        connection.prepareStatement("UPDATE nodes SET parent_path = NULL;")
+                .executeUpdate();
+        assertEquals(0, newArrayList(treeMeIndex.getChildrenByPath(Path.from(group.getPath()), TYPE).get()).size());
+
+        assertEquals(4, treeMeIndex.backfillParentPaths());
+        assertEquals(0, treeMeIndex.backfillParentPaths());
+
+        // startup only backfills tables it has not migrated before
+        connection.prepareStatement("UPDATE nodes SET parent_path = NULL;")
+                .executeUpdate();
+        treeMeIndex = SqlTreeMeIndex.builder().connection(connection).layout(layout).build();
+        assertEquals(0, newArrayList(treeMeIndex.getChildrenByPath(Path.from(group.getPath()), TYPE).get()).size());
+        assertEquals(4, treeMeIndex.backfillParentPaths());
+
+        List<Node> rootChildren = newArrayList(treeMeIndex.getChildrenByPath(Path.from(root.getPath()), TYPE).get());
+        assertEquals(newArrayList(group), rootChildren);
+
+        List<Node> groupChildren = newArrayList(treeMeIndex.getChildrenByPath(Path.from(group.getPath()), TYPE).get());
+        assertEquals(2, groupChildren.size());
+        assertTrue(groupChildren.contains(resource1));
+        assertTrue(groupChildren.contains(resource2));
+    }
+
+    @Test
+    public void testClosureLayoutBackfillsExistingTree() throws Exception {
+        Node root = createRootNode();
+        Node group = createGroupNode();
+        Node resource1 = createNodeUnderGroup("resource1");
+        Node resource2 = createNodeUnderGroup("resource2");
+        treeMeIndex.saveAll(newArrayList(root, group, resource1, resource2));
+
+        SqlTreeMeIndex closureIndex = SqlTreeMeIndex.builder()
+                .connection(connection)
+                .layout(SqlTreeLayout.CLOSURE)
+                .build();
+
+        List<Node> subtree = newArrayList(closureIndex.getAllByPath(Path.from(group.getPath()), TYPE).get());
+        assertEquals(3, subtree.size());
+        assertTrue(subtree.contains(group));
+        assertTrue(subtree.contains(resource1));
+        assertTrue(subtree.contains(resource2));
+
+        closureIndex.deleteByPath(Path.from(group.getPath()), TYPE);
+
+        assertEquals(newArrayList(root), newArrayList(closureIndex.getAllByPath(Path.from(root.getPath()), TYPE).get()));
+    }
+
+    @Test
+    public void testSaveAllAndGetAllByPath() {
+        Node root = createRootNode();
+        Node group = createGroupNode();
+        Node resource1 = createNodeUnderGroup("resource1");
+        Node resource2 = createNodeUnderGroup("resource2");
+        Node nestedGroup = Node.builder()
+                .path(Path.from(GROUP).to("nested group").getPath())
+                .type(TYPE)
+                .name("nested group")
+                .leaf(false)
+                .value("nested group")
+                .build();
+        Node nestedResource = Node.builder()
+                .path(Path.from(GROUP).to("nested group").to("nested resource").getPath())
+                .type(TYPE)
+                .name("nested resource")
+                .leaf(true)
+                .value("nested resource")
+                .build();
+
+        // children deliberately ahead of their parents
+        treeMeIndex.saveAll(newArrayList(nestedResource, resource1, nestedGroup, group, resource2, root));
+
+        Optional<Iterable<Node>> allNodes = treeMeIndex.getAllByPath(Path.from(root.getPath()), root.getType());
+        assertTrue(allNodes.isPresent());
+        List<Node> nodes = newArrayList(allNodes.get());
+        assertEquals(6, nodes.size());
+        assertTrue(nodes.contains(nestedResource));
+
+        // saving again updates in place
+        nestedResource.setValue("updated");
+        treeMeIndex.saveAll(newArrayList(nestedResource));
+        assertEquals(nestedResource, treeMeIndex.getByPath(Path.from(nestedResource.getPath()), TYPE).get());
+    }
+
+    @Test
+    public void testSaveAllIsAtomic() {
+        Node root = createRootNode();
+        Node orphan = Node.builder()
+                .path(Path.from("missing").to("orphan").getPath())
+                .type(TYPE)
+                .name("orphan")
+                .leaf(true)
+                .value("orphan")
+                .build();
+
+        try {
+            treeMeIndex.saveAll(newArrayList(root, createGroupNode(), orphan));
+            fail("Expected save of orphan to fail.");
+        } catch (TreeMeSaveException e) {
+            assertFalse(treeMeIndex.getByPath(Path.from(root.getPath()), root.getType()).isPresent());
+        }
+    }
+
+    @Test
+    public void testGetChildrenPages() {
+        List<Node> nodes = newArrayList(createRootNode(), createGroupNode());
+
+        for (int i = 0; i < 25; i++) {
+            nodes.add(createNodeUnderGroup(String.format("resource%02d", i)));
+        }
+        treeMeIndex.saveAll(nodes);
+
+        Path group = Path.from(createGroupNode().getPath());
+        List<Node> paged = newArrayList();
+        String token = null;
+        int pages = 0;
+
+        do {
+            NodePage page = treeMeIndex.getChildrenByPath(group, TYPE, 10, token).get();
+            paged.addAll(page.getNodes());
+            token = page.getNextToken();
+            pages++;
+        } while (token != null);
+
+        assertEquals(3, pages);
+        assertEquals(nodes.subList(2, nodes.size()), paged);
+        assertFalse(treeMeIndex.getChildrenByPath(Path.from("missing"), TYPE, 10, null).isPresent());
+    }
+
+    @Test
+    public void testStreamAllByPath() {
+        Node root = createRootNode();
+        Node group = createGroupNode();
+        List<Node> nodes = newArrayList(root, group);
+
+        for (int i = 0; i < 50; i++) {
+            nodes.add(createNodeUnderGroup("resource" + i));
+        }
+        treeMeIndex.saveAll(nodes);
+
+        Path groupPath = Path.from(group.getPath());
+        List<Node> expected = newArrayList(treeMeIndex.getAllByPath(groupPath, TYPE).get());
+
+        try (Stream<Node> streamed = treeMeIndex.streamAllByPath(groupPath, TYPE).get()) {
+            assertEquals(1, treeMeIndex.getConnectionPoolStats().getActive());
+            assertEquals(expected.size(), streamed.filter(expected::contains).count());
+        }
+
+        assertEquals(0, treeMeIndex.getConnectionPoolStats().getActive());
+        assertFalse(treeMeIndex.streamAllByPath(Path.from("missing"), TYPE).isPresent());
+        assertEquals(0, treeMeIndex.getConnectionPoolStats().getActive());
+
+        // a stream closed half way releases its connection as well
+        try (Stream<Node> streamed = treeMeIndex.streamAllByPath(groupPath, TYPE).get()) {
+            assertTrue(streamed.findFirst().isPresent());
+        }
+        assertTrue(treeMeIndex.getByPath(groupPath, TYPE).isPresent());
+    }
+
+    @Test
+    public void testPublishAllByPath() {
+        Node root = createRootNode();
+        Node group = createGroupNode();
+        List<Node> nodes = newArrayList(root, group);
+
+        for (int i = 0; i < 50; i++) {
+            nodes.add(createNodeUnderGroup("resource" + i));
+        }
+        treeMeIndex.saveAll(nodes);
+
+        assertFalse(treeMeIndex.publishAllByPath(Path.from("missing"), TYPE).isPresent());
+
+        List<Node> received = newArrayList();
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+
+        treeMeIndex.publishAllByPath(Path.from(group.getPath()), TYPE).get().subscribe(new Subscriber<Node>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(Node node) {
+                received.add(node);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+                fail("Cancelled subscription completed.");
+            }
+        });
+
+        // nothing is read until requested
+        assertEquals(0, treeMeIndex.getConnectionPoolStats().getActive());
+
+        subscription.get().request(10);
+        assertEquals(10, received.size());
+        assertEquals(1, treeMeIndex.getConnectionPoolStats().getActive());
+
+        subscription.get().cancel();
+        assertEquals(0, treeMeIndex.getConnectionPoolStats().getActive());
+    }
+
+    @Test
+    public void testStatementsAreReused() {
+        Node root = createRootNode();
+        treeMeIndex.save(root);
+        SqlStatementCacheStats before = treeMeIndex.getStatementCacheStats();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(treeMeIndex.getByPath(Path.from(root.getPath()), root.getType()).isPresent());
+        }
+
+        // save already prepared the lookup, every lookup after that is a cache hit
+        SqlStatementCacheStats after = treeMeIndex.getStatementCacheStats();
+        assertEquals(before.getMisses(), after.getMisses());
+        assertEquals(before.getHits() + 10, after.getHits());
+    }
+
+    @Test
+    public void testDialectIsDetected() {
+        assertEquals(SqlDialect.H2, treeMeIndex.getDialect());
+    }
+
+    @Test
+    public void testFailedTableCreationIsThrown() throws Exception {
+        try (Connection broken = getConnection("jdbc:h2:mem:broken;MODE=PostgreSQL", IN_MEMORY_JDBC_USER, IN_MEMORY_JDBC_PASSWORD)) {
+            // a nodes table without the columns the indexes are created on
+            broken.prepareStatement("CREATE TABLE nodes (path VARCHAR(1000));").executeUpdate();
+
+            SqlTreeMeIndex.builder()
+                    .connection(broken)
+                    .layout(layout)
+                    .build();
+            fail("Expected the index to fail creating its tables.");
+        } catch (IllegalStateException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void testSaveWithoutParentWritesNothing() {
+        treeMeIndex.save(createRootNode());
+
+        try {
+            treeMeIndex.save(createNodeUnderGroup("orphan"));
+            fail("Expected save without a parent to be rejected.");
+        } catch (TreeMeSaveException e) {
+            assertFalse(treeMeIndex.getByPath(Path.fromDelimited("/group/orphan", PATH_DELIM), TYPE).isPresent());
+        }
+    }
+
+    @Test(expected = TreeMeSaveException.class)
+    public void testSaveUnderLeafNode() {
+        Node group = createGroupNode();
+        group.setLeaf(true);
+
+        treeMeIndex.save(createRootNode());
+        treeMeIndex.save(group);
+        treeMeIndex.save(createNodeUnderGroup("child"));
+    }
+
     @Test(expected = TreeMeSaveException.class)
     public void testUpdateNonLeafNodeAsLeaf() {
         // save root node
@@ -304,6 +833,16 @@ public class SqlTreeMeIndexTest {
                 .build();
     }
 
+    private static Node createTopLevelGroupNode(String name) {
+        return Node.builder()
+                .path(Path.fromDelimited("/" + name, PATH_DELIM).getPath())
+                .type(TYPE)
+                .name(name)
+                .leaf(false)
+                .value(name)
+                .build();
+    }
+
     private static Node createNodeUnderGroup(String name) {
         return Node.builder()
                 .path(Path.fromDelimited("/group/" + name, PATH_DELIM).getPath())
@@ -0,0 +1,231 @@
+package tree.me.service;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import tree.me.service.reactive.StreamPublisher;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.Assert.*;
+
+public class StreamPublisherTest {
+
+    @Test
+    public void testPublishesOnlyWhatIsRequested() {
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        new StreamPublisher<>(() -> IntStream.range(0, 10).boxed()
+                .peek(i -> pulled.incrementAndGet())
+                .onClose(() -> closed.set(true)))
+                .subscribe(subscriber);
+
+        assertEquals(0, pulled.get());
+
+        subscriber.subscription.request(3);
+        assertEquals(newArrayList(0, 1, 2), subscriber.received);
+        assertEquals(3, pulled.get());
+        assertFalse(closed.get());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(10, subscriber.received.size());
+        assertTrue(subscriber.completed);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testCancelClosesStream() {
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        new StreamPublisher<>(() -> IntStream.range(0, 10).boxed().onClose(() -> closed.set(true)))
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+
+        assertTrue(closed.get());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals(newArrayList(0), subscriber.received);
+    }
+
+    @Test
+    public void testRequestingFromOnNextDoesNotRecurse() {
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(Integer item) {
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+
+        new StreamPublisher<>(() -> IntStream.range(0, 10000).boxed()).subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        assertEquals(10000, subscriber.received.size());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testInvalidRequestFails() {
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        new StreamPublisher<>(() -> IntStream.range(0, 10).boxed().onClose(() -> closed.set(true)))
+                .subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testThrowingSubscriberIsCancelledWithoutError() {
+        AtomicBoolean closed = new AtomicBoolean();
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(Integer item) {
+                super.onNext(item);
+                throw new IllegalStateException("Subscriber failed.");
+            }
+        };
+
+        new StreamPublisher<>(() -> IntStream.range(0, 10).boxed().onClose(() -> closed.set(true)))
+                .subscribe(subscriber);
+        subscriber.subscription.request(5);
+
+        assertEquals(newArrayList(0), subscriber.received);
+        assertTrue(closed.get());
+        assertNull(subscriber.error);
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals(newArrayList(0), subscriber.received);
+    }
+
+    @Test
+    public void testFailingSourceSignalsError() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        new StreamPublisher<Integer>(() -> IntStream.range(0, 10).boxed().peek(i -> {
+            if (i == 2) {
+                throw new IllegalStateException("Source failed.");
+            }
+        })).subscribe(subscriber);
+        subscriber.subscription.request(5);
+
+        assertEquals(newArrayList(0, 1), subscriber.received);
+        assertTrue(subscriber.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testPublishesOnExecutor() {
+        List<Runnable> tasks = newArrayList();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        new StreamPublisher<>(() -> IntStream.range(0, 3).boxed(), tasks::add).subscribe(subscriber);
+        subscriber.subscription.request(2);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(1, tasks.size());
+        assertTrue(subscriber.received.isEmpty());
+
+        tasks.remove(0).run();
+        assertEquals(newArrayList(0, 1, 2), subscriber.received);
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testConcurrentRequestsAreSerialized() throws Exception {
+        ExecutorService executor = newFixedThreadPool(4);
+        AtomicInteger emitting = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(Integer item) {
+                if (emitting.incrementAndGet() != 1) {
+                    overlapped.set(true);
+                }
+                super.onNext(item);
+                emitting.decrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                super.onComplete();
+                done.countDown();
+            }
+        };
+
+        try {
+            new StreamPublisher<>(() -> IntStream.range(0, 1000).boxed(), executor).subscribe(subscriber);
+
+            for (int i = 0; i < 1001; i++) {
+                executor.execute(() -> subscriber.subscription.request(1));
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertFalse(overlapped.get());
+        assertEquals(1000, subscriber.received.size());
+    }
+
+    @Test
+    public void testRejectedExecutionSignalsError() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        new StreamPublisher<>(() -> IntStream.range(0, 3).boxed(), task -> {
+            throw new RejectedExecutionException("Shut down.");
+        }).subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.received.isEmpty());
+        assertTrue(subscriber.error instanceof RejectedExecutionException);
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Integer> {
+        Subscription subscription;
+        List<Integer> received = newArrayList();
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -8,7 +8,8 @@ import tree.me.sample.core.Page;
 import tree.me.sample.service.PageService;
 import tree.me.service.TreeMeIndex;
 
-import static com.google.common.collect.Lists.newArrayList;
+import java.util.Collection;
+import java.util.Map;
 
 public class TreeMePageApi extends AbstractTreeMeApi<Page> {
 
@@ -28,6 +29,11 @@ public class TreeMePageApi extends AbstractTreeMeApi<Page> {
         return pageService.get(id).orElse(null);
     }
 
+    @Override
+    public Map<String, Page> onGetResources(Collection<String> ids) {
+        return pageService.getAll(ids);
+    }
+
     @Override
     public void onSaveResource(Page page) {
         pageService.save(page);
@@ -44,8 +50,13 @@ public class TreeMePageApi extends AbstractTreeMeApi<Page> {
 
     @Override
     public void onGroupDelete(Iterable<String> resourceIdsToDelete) {
-        newArrayList(resourceIdsToDelete).stream()
-                .forEach(id -> pageService.delete(id));
+        Map<String, String> failures = pageService.deleteAll(resourceIdsToDelete);
+
+        // Thrown before the delete from the tree commits, so the tree keeps pointing at every page and
+        // the delete can be retried; pages deleted already are simply not found the next time.
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("Failed to delete " + failures.size() + " pages: " + failures);
+        }
     }
 
     @Override
@@ -2,6 +2,8 @@ package tree.me.sample.service;
 
 import tree.me.sample.core.Page;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 public interface PageService {
@@ -14,6 +16,14 @@ public interface PageService {
      */
     Optional<Page> get(String id);
 
+    /**
+     * Fetch many {@link Page}s by ID at once. IDs without a {@link Page} are left out.
+     *
+     * @param ids
+     * @return
+     */
+    Map<String, Page> getAll(Collection<String> ids);
+
     /**
      * Save a {@link Page}.
      *
@@ -29,4 +39,12 @@ public interface PageService {
      */
     void delete(String id);
 
+    /**
+     * Delete many {@link Page}s by ID at once. IDs without a {@link Page} are ignored.
+     *
+     * @param ids
+     * @return the reason each {@link Page} that failed to delete failed, by ID
+     */
+    Map<String, String> deleteAll(Iterable<String> ids);
+
 }
@@ -1,21 +1,35 @@
 package tree.me.sample.service.elastic;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tree.me.sample.core.Page;
 import tree.me.sample.service.PageService;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import static com.google.common.collect.Iterables.partition;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
 import static java.util.Optional.ofNullable;
 import static tree.me.sample.service.elastic.ElasticPageMappings.MAPPING;
 
@@ -26,12 +40,30 @@ public class ElasticPageService implements PageService {
     public static final String PAGE_ELASTIC_INDEX = "unifier.dataindex.page";
     public static final String PAGE_ELASTIC_TYPE = "page";
 
+    public static final int DEFAULT_BULK_SIZE = 500;
+
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader READER = MAPPER.readerFor(Page.class);
+    private static final ObjectWriter WRITER = MAPPER.writerFor(Page.class);
 
     private Client client;
+    private int bulkSize;
 
     public ElasticPageService(Client client) {
+        this(client, DEFAULT_BULK_SIZE);
+    }
+
+    /**
+     * @param client
+     * @param bulkSize most requests sent in a single bulk request, e.g. by {@link #deleteAll(Iterable)}
+     */
+    public ElasticPageService(Client client, int bulkSize) {
+        if (bulkSize < 1) {
+            throw new IllegalArgumentException("Bulk size must be at least 1.");
+        }
+
         this.client = client;
+        this.bulkSize = bulkSize;
         init();
     }
 
@@ -41,33 +73,61 @@ public class ElasticPageService implements PageService {
             GetResponse get = client.prepareGet(PAGE_ELASTIC_INDEX, PAGE_ELASTIC_TYPE, id).get();
 
             if (get.isExists()) {
-                Page page = MAPPER.convertValue(get.getSource(), Page.class);
-
-                LOG.info("Found page: " + page.toString());
-                return ofNullable(page);
+                LOG.debug("Found page of ID: {}.", id);
+                return ofNullable(readPage(get.getSourceAsBytesRef()));
             }
 
             return ofNullable(null);
-        } catch (ElasticsearchException e) {
+        } catch (ElasticsearchException | IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public void save(Page page) throws RuntimeException {
+    public Map<String, Page> getAll(Collection<String> ids) throws RuntimeException {
+        Map<String, Page> pages = newHashMap();
+
+        if (ids.isEmpty()) {
+            return pages;
+        }
+
         try {
-            Map pageMap = MAPPER.convertValue(page, Map.class);
+            MultiGetResponse multiGet = client.prepareMultiGet()
+                    .add(PAGE_ELASTIC_INDEX, PAGE_ELASTIC_TYPE, ids)
+                    .get();
+
+            for (MultiGetItemResponse item : multiGet) {
+                if (item.isFailed()) {
+                    throw new RuntimeException("Failed to fetch page of ID: " + item.getId() + ". " +
+                            item.getFailure().getMessage());
+                }
+
+                GetResponse get = item.getResponse();
 
+                if (get.isExists()) {
+                    pages.put(get.getId(), readPage(get.getSourceAsBytesRef()));
+                }
+            }
+
+            LOG.debug("Found {} of {} pages.", pages.size(), ids.size());
+            return pages;
+        } catch (ElasticsearchException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void save(Page page) throws RuntimeException {
+        try {
             UpdateResponse update = client.prepareUpdate(PAGE_ELASTIC_INDEX, PAGE_ELASTIC_TYPE, page.getId())
                     .setDocAsUpsert(true)
-                    .setUpsert(pageMap)
-                    .setDoc(pageMap)
+                    .setDoc(writePage(page))
                     .get();
 
             if (update.isCreated()) {
-                LOG.info("Created new Page: " + page.toString() + ".");
+                LOG.debug("Created new page of ID: {}.", page.getId());
             }
-        } catch (ElasticsearchException e) {
+        } catch (ElasticsearchException | IOException e) {
             throw new RuntimeException(e);
         }
     }
@@ -81,6 +141,63 @@ public class ElasticPageService implements PageService {
         }
     }
 
+    @Override
+    public Map<String, String> deleteAll(Iterable<String> ids) throws RuntimeException {
+        Map<String, String> failures = newLinkedHashMap();
+        int deleted = 0;
+
+        try {
+            for (List<String> chunk : partition(ids, bulkSize)) {
+                BulkRequestBuilder bulk = client.prepareBulk();
+                chunk.forEach(id -> bulk.add(client.prepareDelete(PAGE_ELASTIC_INDEX, PAGE_ELASTIC_TYPE, id)));
+
+                BulkResponse response = bulk.get();
+
+                for (BulkItemResponse item : response) {
+                    if (item.isFailed()) {
+                        failures.put(item.getId(), item.getFailureMessage());
+                    } else if (item.<DeleteResponse>getResponse().isFound()) {
+                        deleted++;
+                    } else {
+                        LOG.debug("Page of ID: " + item.getId() + " not found.");
+                    }
+                }
+            }
+        } catch (ElasticsearchException e) {
+            throw new RuntimeException(e);
+        }
+
+        LOG.info("Deleted " + deleted + " pages, " + failures.size() + " failed.");
+        return failures;
+    }
+
+    /**
+     * Bind a {@link Page} straight from the bytes of its source, without going through a {@link Map}.
+     *
+     * @param source
+     * @return
+     * @throws IOException
+     */
+    static Page readPage(BytesReference source) throws IOException {
+        if (source.hasArray()) {
+            return READER.readValue(source.array(), source.arrayOffset(), source.length());
+        }
+
+        return READER.readValue(source.streamInput());
+    }
+
+    /**
+     * Serialize a {@link Page} to the bytes of its source. With doc as upsert, the same bytes serve
+     * as the partial document and as the document created when there is none yet.
+     *
+     * @param page
+     * @return
+     * @throws IOException
+     */
+    static byte[] writePage(Page page) throws IOException {
+        return WRITER.writeValueAsBytes(page);
+    }
+
     private void init() {
         ClusterHealthResponse health = client.admin()
                 .cluster()
@@ -91,11 +208,20 @@ public class ElasticPageService implements PageService {
 
         LOG.info("Elasticsearch cluster is: " + clusterStatus.name());
 
-        client.admin()
+        // services sharing a cluster, e.g. with different bulk sizes, create the index only once
+        boolean exists = client.admin()
                 .indices()
-                .prepareCreate(PAGE_ELASTIC_INDEX)
-                .addMapping(PAGE_ELASTIC_TYPE, MAPPING)
-                .get();
+                .prepareExists(PAGE_ELASTIC_INDEX)
+                .get()
+                .isExists();
+
+        if (!exists) {
+            client.admin()
+                    .indices()
+                    .prepareCreate(PAGE_ELASTIC_INDEX)
+                    .addMapping(PAGE_ELASTIC_TYPE, MAPPING)
+                    .get();
+        }
 
         ClusterHealthResponse indexStatus = client.admin()
                 .cluster()
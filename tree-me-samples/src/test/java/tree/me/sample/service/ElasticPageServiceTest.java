@@ -1,13 +1,18 @@
 package tree.me.sample.service;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import tree.me.sample.core.Page;
 import tree.me.sample.service.elastic.ElasticPageService;
 import tree.me.test.IronhideTest;
 
+import java.util.Map;
 import java.util.Optional;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static tree.me.sample.service.elastic.ElasticPageService.PAGE_ELASTIC_INDEX;
+
 import static org.junit.Assert.*;
 
 public class ElasticPageServiceTest extends IronhideTest {
@@ -41,6 +46,55 @@ public class ElasticPageServiceTest extends IronhideTest {
         assertFalse(fetched.isPresent());
     }
 
+    @Test
+    public void testGetAll() {
+        Page page1 = new Page("id1", "name1");
+        Page page2 = new Page("id2", "name2");
+        pageService.save(page1);
+        pageService.save(page2);
+
+        Map<String, Page> fetched = pageService.getAll(newArrayList("id1", "id2", "missing"));
+        assertEquals(2, fetched.size());
+        assertEquals(page1.getName(), fetched.get("id1").getName());
+        assertEquals(page2.getName(), fetched.get("id2").getName());
+        assertTrue(pageService.getAll(newArrayList()).isEmpty());
+    }
+
+    @Test
+    public void testDeleteAll() {
+        pageService.save(new Page("id1", "name1"));
+        pageService.save(new Page("id2", "name2"));
+        pageService.save(new Page("id3", "name3"));
+
+        Map<String, String> failures = pageService.deleteAll(newArrayList("id1", "id2", "missing"));
+        assertTrue(failures.isEmpty());
+
+        assertFalse(pageService.get("id1").isPresent());
+        assertFalse(pageService.get("id2").isPresent());
+        assertTrue(pageService.get("id3").isPresent());
+    }
+
+    @Test
+    public void testDeleteAllInChunks() {
+        ElasticPageService chunkedService = new ElasticPageService(client, 1);
+        chunkedService.save(new Page("id1", "name1"));
+        chunkedService.save(new Page("id2", "name2"));
+        chunkedService.save(new Page("id3", "name3"));
+
+        Map<String, String> failures = chunkedService.deleteAll(newArrayList("id1", "missing", "id2"));
+        assertTrue(failures.isEmpty());
+        assertFalse(chunkedService.get("id1").isPresent());
+        assertFalse(chunkedService.get("id2").isPresent());
+        assertTrue(chunkedService.get("id3").isPresent());
+
+        // deletes from a closed index fail item by item
+        client.admin().indices().prepareClose(PAGE_ELASTIC_INDEX).get();
+
+        failures = chunkedService.deleteAll(newArrayList("id3", "missing"));
+        assertEquals(newArrayList("id3", "missing"), newArrayList(failures.keySet()));
+        failures.values().forEach(Assert::assertNotNull);
+    }
+
     @Test
     public void testSave() {
         String markdown = "# Markdown Title\n" +
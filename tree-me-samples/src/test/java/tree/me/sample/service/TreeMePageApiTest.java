@@ -1,18 +1,22 @@
 package tree.me.sample.service;
 
 import org.junit.*;
+import tree.me.api.AsyncTreeMeApi;
 import tree.me.api.TreeMeApi;
 import tree.me.core.api.ANode;
 import tree.me.core.api.AValueHolder;
+import tree.me.core.index.ImmutablePath;
 import tree.me.core.index.Path;
 import tree.me.sample.TreeMePageApi;
 import tree.me.sample.core.Page;
 import tree.me.sample.service.elastic.ElasticPageService;
+import tree.me.service.exception.TreeMeSaveException;
 import tree.me.service.sql.SqlTreeMeIndex;
 import tree.me.test.IronhideTest;
 
 import java.sql.Connection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -21,6 +25,7 @@ import static java.sql.DriverManager.getConnection;
 import static org.junit.Assert.*;
 import static tree.me.core.api.AValueHolder.AValueType.RESOURCE;
 import static tree.me.sample.TreeMePageApi.TREE_ME_PAGE;
+import static tree.me.sample.service.elastic.ElasticPageService.PAGE_ELASTIC_INDEX;
 
 public class TreeMePageApiTest extends IronhideTest {
 
@@ -71,6 +76,24 @@ public class TreeMePageApiTest extends IronhideTest {
         assertEquals(expected, actual.getValue());
     }
 
+    @Test
+    public void testGetAsync() throws Exception {
+        AsyncTreeMeApi<Page> asyncPageApi = new TreeMePageApi(treeMeIndex, pageService);
+        Page expected = new Page("id", "name");
+        Path path = Path.from("page1");
+        asyncPageApi.saveResourceAsync(path, "name", expected.getId(), expected).get();
+        sleep(250);
+
+        Optional<AValueHolder> fetched = asyncPageApi.getAsync(path).get();
+        assertTrue(fetched.isPresent());
+
+        AValueHolder actual = fetched.get();
+        assertEquals(RESOURCE, actual.getType());
+        assertEquals(expected, actual.getValue());
+        assertEquals(expected, asyncPageApi.getResourceAsync(path).get().get());
+        assertFalse(asyncPageApi.getAsync(Path.from("missing")).get().isPresent());
+    }
+
     @Test
     public void testGetNested() throws Exception {
         String DELIM = "/";
@@ -156,6 +179,29 @@ public class TreeMePageApiTest extends IronhideTest {
         assertEquals(0, node.getChildren().size());
     }
 
+    @Test
+    public void testGetGroupResources() throws Exception {
+        Page page1 = new Page("id1", "name1");
+        Page page2 = new Page("id2", "name2");
+
+        treeMePageApi.saveGroup(Path.from("group1"), "group1");
+        treeMePageApi.saveGroup(Path.from("group1").to("group2"), "group2");
+
+        Path path1 = Path.from("group1").to("page1");
+        Path path2 = Path.from("group1").to("page2");
+
+        treeMePageApi.saveResource(path1, "page1", page1.getId(), page1);
+        treeMePageApi.saveResource(path2, "page2", page2.getId(), page2);
+        sleep(250);
+
+        Optional<Map<ImmutablePath, Page>> fetched = treeMePageApi.getGroupResources(Path.from("group1"));
+        assertTrue(fetched.isPresent());
+        assertEquals(2, fetched.get().size());
+        assertEquals(page1, fetched.get().get(path1.toImmutable()));
+        assertEquals(page2, fetched.get().get(path2.toImmutable()));
+        assertFalse(treeMePageApi.getGroupResources(Path.from("missing")).isPresent());
+    }
+
     @Test
     public void testGetTreeWithOrder() throws Exception {
         Page page1 = new Page("id1", "name1");
@@ -203,4 +249,53 @@ public class TreeMePageApiTest extends IronhideTest {
         assertFalse(deleted.isPresent());
     }
 
+    @Test
+    public void testInvalidCopyDuplicatesNothing() throws Exception {
+        List<String> duplicated = newArrayList();
+        TreeMeApi<Page> copyingApi = new TreeMePageApi(treeMeIndex, pageService) {
+            @Override
+            protected Map<String, String> onCopyResources(Iterable<String> resourceIds) {
+                resourceIds.forEach(duplicated::add);
+                return super.onCopyResources(resourceIds);
+            }
+        };
+
+        Page page = new Page("id", "name");
+        copyingApi.saveGroup(Path.from("group"), "group");
+        copyingApi.saveGroup(Path.from("other"), "other");
+        copyingApi.saveResource(Path.from("group").to("page1"), "name", page.getId(), page);
+        sleep(250);
+
+        try {
+            copyingApi.copy(Path.from("group"), Path.from("other"));
+            fail("Expected copying onto an existing path to fail.");
+        } catch (TreeMeSaveException e) {
+            assertTrue(duplicated.isEmpty());
+        }
+
+        copyingApi.copy(Path.from("group"), Path.from("other").to("copy"));
+        assertEquals(newArrayList(page.getId()), duplicated);
+    }
+
+    @Test
+    public void testFailedGroupDeleteKeepsTree() throws Exception {
+        Page page = new Page("id", "name");
+        Path group = Path.from("group");
+        Path path = Path.from("group").to("page1");
+        treeMePageApi.saveGroup(group, "group");
+        treeMePageApi.saveResource(path, "name", page.getId(), page);
+        sleep(250);
+
+        client.admin().indices().prepareClose(PAGE_ELASTIC_INDEX).get();
+
+        try {
+            treeMePageApi.delete(group);
+            fail("Expected the page delete to fail.");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains(page.getId()));
+        }
+
+        assertTrue(treeMeIndex.getByPath(path, TREE_ME_PAGE).isPresent());
+    }
+
 }
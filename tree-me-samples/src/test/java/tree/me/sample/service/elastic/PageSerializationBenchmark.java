@@ -0,0 +1,84 @@
+package tree.me.sample.service.elastic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tree.me.sample.core.Enrichment;
+import tree.me.sample.core.Page;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Strings.repeat;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Compares how {@link ElasticPageService} binds and serializes {@link Page} sources against going through
+ * an intermediate {@link Map}, the way it used to: {@code GetResponse#getSource()} parsing the source into
+ * a {@link Map} for {@link ObjectMapper#convertValue(Object, Class)}, and saves converting the {@link Page}
+ * to a {@link Map} that Elasticsearch serializes once as the upsert and once as the doc.
+ * <p>
+ * Run from the test classpath with the GC profiler for allocation rates, e.g.
+ * {@code java -cp <test classpath> org.openjdk.jmh.Main PageSerializationBenchmark -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageSerializationBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"1024", "262144"})
+    private int markdownLength;
+
+    @Param({"10", "1000"})
+    private int enrichments;
+
+    private Page page;
+    private BytesReference source;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Enrichment> enrichment = newArrayList();
+
+        for (int i = 0; i < enrichments; i++) {
+            enrichment.add(new Enrichment("IP_SRC", "120.123.4." + (i % 256), "source" + i));
+        }
+
+        page = new Page("id", "name", repeat("Something <unity-query>IP_SRC: 120.123.4.5</unity-query>.\n",
+                markdownLength / 58 + 1).substring(0, markdownLength), enrichment);
+        source = new BytesArray(ElasticPageService.writePage(page));
+    }
+
+    @Benchmark
+    public Page readThroughMap() {
+        return MAPPER.convertValue(XContentHelper.convertToMap(source, false).v2(), Page.class);
+    }
+
+    @Benchmark
+    public Page readFromBytes() throws IOException {
+        return ElasticPageService.readPage(source);
+    }
+
+    @Benchmark
+    public void writeThroughMap(Blackhole blackhole) throws IOException {
+        Map pageMap = MAPPER.convertValue(page, Map.class);
+
+        blackhole.consume(jsonBuilder().map(pageMap).bytes());
+        blackhole.consume(jsonBuilder().map(pageMap).bytes());
+    }
+
+    @Benchmark
+    public byte[] writeToBytes() throws IOException {
+        return ElasticPageService.writePage(page);
+    }
+}